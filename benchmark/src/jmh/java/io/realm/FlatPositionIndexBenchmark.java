@@ -0,0 +1,190 @@
+package io.realm;
+
+import android.support.v7.util.ListUpdateCallback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations {@link RealmExpandableRecyclerAdapter} performs on its
+ * {@link FlatPositionIndex}, on a synthetic list of parents having 0 to 8 children, half of
+ * them expanded.
+ * <p>
+ * Only the index is measured: reading the parents from Realm, wrapping them and dispatching
+ * the notifications to a RecyclerView need an Android runtime and are left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FlatPositionIndexBenchmark {
+
+    private static final int MAX_CHILD_COUNT = 8;
+    /**
+     * Number of parents removed and inserted by a change set.
+     */
+    private static final int CHANGED_PARENT_COUNT = 8;
+    /**
+     * Number of precomputed random positions, cycled through by the lookups.
+     */
+    private static final int POSITION_COUNT = 1 << 12;
+
+    /**
+     * Approximate number of rows of the flattened list.
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rowCount;
+
+    private int parentCount;
+    private int[] childCounts;
+    private int[] rowCounts;
+    private boolean[] expanded;
+    private final int[] insertedRowCounts = new int[CHANGED_PARENT_COUNT];
+    private final boolean[] insertedExpanded = new boolean[CHANGED_PARENT_COUNT];
+
+    /**
+     * Only queried, so every lookup sees the same list.
+     */
+    private FlatPositionIndex index;
+    /**
+     * Expanded, collapsed and spliced by the benchmarks that change the list.
+     */
+    private FlatPositionIndex mutableIndex;
+
+    private final NotificationCoalescer notifications = new NotificationCoalescer(new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+    });
+
+    private final int[] flatPositions = new int[POSITION_COUNT];
+    private final int[] parentPositions = new int[POSITION_COUNT];
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        // a parent has 1 + 0.5 * 4 rows on average
+        parentCount = Math.max(rowCount / 3, CHANGED_PARENT_COUNT * 2);
+        childCounts = new int[parentCount];
+        rowCounts = new int[parentCount];
+        expanded = new boolean[parentCount];
+        for (int i = 0; i < parentCount; i++) {
+            childCounts[i] = random.nextInt(MAX_CHILD_COUNT + 1);
+            expanded[i] = random.nextBoolean();
+            rowCounts[i] = expanded[i] ? childCounts[i] + 1 : 1;
+        }
+        for (int i = 0; i < CHANGED_PARENT_COUNT; i++) {
+            insertedExpanded[i] = random.nextBoolean();
+            insertedRowCounts[i] = insertedExpanded[i] ? random.nextInt(MAX_CHILD_COUNT + 1) + 1 : 1;
+        }
+
+        index = new FlatPositionIndex();
+        index.rebuild(rowCounts, expanded, parentCount);
+        mutableIndex = new FlatPositionIndex();
+        mutableIndex.rebuild(rowCounts, expanded, parentCount);
+
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            flatPositions[i] = random.nextInt(index.getFlatItemCount());
+            parentPositions[i] = random.nextInt(parentCount - CHANGED_PARENT_COUNT);
+        }
+    }
+
+    /**
+     * Builds the index from row counts already read, the last step of flattening the parents.
+     */
+    @Benchmark
+    public FlatPositionIndex rebuildIndex() {
+        FlatPositionIndex rebuilt = new FlatPositionIndex();
+        rebuilt.rebuild(rowCounts, expanded, parentCount);
+        return rebuilt;
+    }
+
+    @Benchmark
+    public int getNearestParentPosition() {
+        return index.getNearestParentPosition(flatPositions[next()]);
+    }
+
+    @Benchmark
+    public int getChildPosition() {
+        return index.getChildPosition(flatPositions[next()]);
+    }
+
+    @Benchmark
+    public long locate() {
+        return index.locate(flatPositions[next()]);
+    }
+
+    @Benchmark
+    public int getFlatParentPosition() {
+        return index.getFlatParentPosition(parentPositions[next()]);
+    }
+
+    /**
+     * Toggles a parent the way the adapter does when a parent row is clicked.
+     */
+    @Benchmark
+    public int expandCollapse() {
+        int parentPosition = parentPositions[next()];
+        int flatParentPosition = mutableIndex.getFlatParentPosition(parentPosition);
+        int childCount = childCounts[parentPosition];
+        if (mutableIndex.isExpanded(parentPosition)) {
+            mutableIndex.setExpanded(parentPosition, false, 1);
+            notifications.onRemoved(flatParentPosition + 1, childCount);
+        } else {
+            mutableIndex.setExpanded(parentPosition, true, childCount + 1);
+            notifications.onInserted(flatParentPosition + 1, childCount);
+        }
+        return mutableIndex.getFlatItemCount();
+    }
+
+    /**
+     * Applies a parent change set deleting and inserting a few parents, then resolves a row,
+     * which pays for the part of the index the change set left stale.
+     */
+    @Benchmark
+    public int applyChangeSet() {
+        notifications.beginBatch();
+        try {
+            int removedPosition = parentPositions[next()];
+            int flatPosition = mutableIndex.getFlatParentPosition(removedPosition);
+            int removedRowCount = mutableIndex.getRowCount(removedPosition, CHANGED_PARENT_COUNT);
+            mutableIndex.removeParents(removedPosition, CHANGED_PARENT_COUNT);
+            notifications.onRemoved(flatPosition, removedRowCount);
+
+            int insertedPosition = parentPositions[next()];
+            mutableIndex.insertParents(insertedPosition, insertedRowCounts, insertedExpanded, CHANGED_PARENT_COUNT);
+            notifications.onInserted(mutableIndex.getFlatParentPosition(insertedPosition),
+                    mutableIndex.getRowCount(insertedPosition, CHANGED_PARENT_COUNT));
+        } finally {
+            notifications.endBatch();
+        }
+        return mutableIndex.getNearestParentPosition(mutableIndex.getFlatItemCount() - 1);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (POSITION_COUNT - 1);
+        return cursor;
+    }
+}
@@ -0,0 +1,243 @@
+package io.realm;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.model.Child;
+import io.realm.model.Parent;
+
+/**
+ * Benchmarks the work {@link RealmExpandableRecyclerAdapter} does on the UI thread when its
+ * data changes: flattening the parents, and applying the change sets of the parent list and of
+ * the child lists. The synthetic parents have 0 to 8 children, half of them are expanded.
+ * <p>
+ * The Realm and Android types are stubbed in src/stubs: the collections are plain lists whose
+ * listeners the benchmarks notify, and the adapter notifications reach no RecyclerView, so
+ * only the adapter itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RealmExpandableRecyclerAdapterBenchmark {
+
+    private static final int MAX_CHILD_COUNT = 8;
+    /**
+     * Number of parents removed and inserted again by a parent change set.
+     */
+    private static final int CHANGED_PARENT_COUNT = 8;
+    /**
+     * Number of precomputed random positions, cycled through by the benchmarks.
+     */
+    private static final int POSITION_COUNT = 1 << 12;
+
+    /**
+     * Approximate number of rows of the flattened list.
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rowCount;
+
+    /**
+     * See {@link RealmExpandableRecyclerAdapter#RealmExpandableRecyclerAdapter(OrderedRealmCollection, boolean)}.
+     */
+    @Param({"false", "true"})
+    public boolean virtualFlatList;
+
+    private RealmList<BenchmarkParent> parents;
+    private BenchmarkAdapter adapter;
+
+    private final int[] parentPositions = new int[POSITION_COUNT];
+    /**
+     * Expanded parents with at least one child.
+     */
+    private final List<BenchmarkParent> expandedParents = new ArrayList<>(POSITION_COUNT);
+    private final List<BenchmarkParent> removedParents = new ArrayList<>(CHANGED_PARENT_COUNT);
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        parents = new RealmList<>();
+        int flatRowCount = 0;
+        while (flatRowCount < rowCount) {
+            BenchmarkParent parent = new BenchmarkParent(random.nextBoolean());
+            int childCount = random.nextInt(MAX_CHILD_COUNT + 1);
+            for (int i = 0; i < childCount; i++) {
+                parent.children.add(new BenchmarkChild());
+            }
+            parents.add(parent);
+            flatRowCount += parent.expanded ? childCount + 1 : 1;
+        }
+
+        adapter = new BenchmarkAdapter(parents, virtualFlatList);
+        // registers the listeners of the parent list and of the expanded child lists
+        adapter.onAttachedToRecyclerView(new RecyclerView(null));
+
+        List<BenchmarkParent> expandedParentsWithChildren = new ArrayList<>();
+        for (BenchmarkParent parent : parents) {
+            if (parent.expanded && !parent.children.isEmpty()) {
+                expandedParentsWithChildren.add(parent);
+            }
+        }
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            parentPositions[i] = random.nextInt(parents.size() - CHANGED_PARENT_COUNT);
+            expandedParents.add(expandedParentsWithChildren.get(random.nextInt(expandedParentsWithChildren.size())));
+        }
+    }
+
+    /**
+     * Flattens every parent again, the way the adapter does when its data is replaced.
+     */
+    @Benchmark
+    public int notifyParentDataSetChanged() {
+        adapter.notifyParentDataSetChanged();
+        return adapter.getItemCount();
+    }
+
+    /**
+     * Removes consecutive parents and inserts them again, applying the change set of both.
+     */
+    @Benchmark
+    public int applyParentChangeSet() {
+        int position = parentPositions[next()];
+        List<BenchmarkParent> changedParents = parents.subList(position, position + CHANGED_PARENT_COUNT);
+        removedParents.addAll(changedParents);
+        changedParents.clear();
+        parents.notifyChangeListeners(new ChangeSet(ChangeSet.DELETION, position, CHANGED_PARENT_COUNT));
+
+        parents.addAll(position, removedParents);
+        removedParents.clear();
+        parents.notifyChangeListeners(new ChangeSet(ChangeSet.INSERTION, position, CHANGED_PARENT_COUNT));
+        return adapter.getItemCount();
+    }
+
+    /**
+     * Reports consecutive parents as modified.
+     */
+    @Benchmark
+    public int applyParentModifications() {
+        parents.notifyChangeListeners(new ChangeSet(ChangeSet.CHANGE, parentPositions[next()], CHANGED_PARENT_COUNT));
+        return adapter.getItemCount();
+    }
+
+    /**
+     * Removes the last child of an expanded parent and inserts it again, applying the change
+     * set of both.
+     */
+    @Benchmark
+    public int applyChildChangeSet() {
+        RealmList<BenchmarkChild> children = expandedParents.get(next()).children;
+        int position = children.size() - 1;
+        BenchmarkChild child = children.remove(position);
+        children.notifyChangeListeners(new ChangeSet(ChangeSet.DELETION, position, 1));
+
+        children.add(child);
+        children.notifyChangeListeners(new ChangeSet(ChangeSet.INSERTION, position, 1));
+        return adapter.getItemCount();
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (POSITION_COUNT - 1);
+        return cursor;
+    }
+
+    /**
+     * A change set of a single range.
+     */
+    private static final class ChangeSet implements OrderedCollectionChangeSet {
+        static final int DELETION = 0;
+        static final int INSERTION = 1;
+        static final int CHANGE = 2;
+
+        private static final Range[] NO_RANGES = new Range[0];
+
+        private final int type;
+        private final Range[] ranges;
+
+        ChangeSet(int type, int startIndex, int length) {
+            this.type = type;
+            this.ranges = new Range[]{new Range(startIndex, length)};
+        }
+
+        @Override
+        public Range[] getDeletionRanges() {
+            return type == DELETION ? ranges : NO_RANGES;
+        }
+
+        @Override
+        public Range[] getInsertionRanges() {
+            return type == INSERTION ? ranges : NO_RANGES;
+        }
+
+        @Override
+        public Range[] getChangeRanges() {
+            return type == CHANGE ? ranges : NO_RANGES;
+        }
+    }
+
+    static final class BenchmarkParent implements Parent<BenchmarkChild> {
+        final RealmList<BenchmarkChild> children = new RealmList<>();
+        final boolean expanded;
+
+        BenchmarkParent(boolean expanded) {
+            this.expanded = expanded;
+        }
+
+        @Override
+        public RealmList<BenchmarkChild> getChildList() {
+            return children;
+        }
+
+        @Override
+        public boolean isExpanded() {
+            return expanded;
+        }
+    }
+
+    static final class BenchmarkChild implements Child {
+    }
+
+    /**
+     * Adapter creating and binding no view, rows are never bound by the benchmarks.
+     */
+    static final class BenchmarkAdapter
+            extends RealmExpandableRecyclerAdapter<BenchmarkParent, BenchmarkChild, ParentViewHolder, ChildViewHolder> {
+
+        BenchmarkAdapter(OrderedRealmCollection<BenchmarkParent> parents, boolean virtualFlatList) {
+            super(parents, virtualFlatList);
+        }
+
+        @Override
+        public ParentViewHolder onCreateParentViewHolder(ViewGroup parentViewGroup, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ChildViewHolder onCreateChildViewHolder(ViewGroup childViewGroup, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindParentViewHolder(ParentViewHolder parentViewHolder, int parentPosition, BenchmarkParent parent) {
+        }
+
+        @Override
+        public void onBindChildViewHolder(ChildViewHolder childViewHolder, int parentPosition, int childPosition,
+                                          BenchmarkChild child) {
+        }
+    }
+}
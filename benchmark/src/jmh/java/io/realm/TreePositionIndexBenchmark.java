@@ -0,0 +1,144 @@
+package io.realm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations {@link RealmTreeRecyclerAdapter} performs on its
+ * {@link TreePositionIndex}, on a synthetic tree of four levels, every node expanded.
+ * <p>
+ * Only the index is measured, the Realm reads and notifications of the adapter are left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TreePositionIndexBenchmark {
+
+    private static final int DEPTH = 4;
+    private static final int POSITION_COUNT = 1 << 12;
+
+    /**
+     * Approximate number of rows of the flattened tree.
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rowCount;
+
+    private int fanOut;
+    /**
+     * Only queried, so every lookup sees the same tree.
+     */
+    private TreePositionIndex<Integer> index;
+    /**
+     * Expanded and collapsed by {@link #expandCollapse()}.
+     */
+    private TreePositionIndex<Integer> mutableIndex;
+    /**
+     * A single level of {@link #rowCount} siblings, children inserted and removed by
+     * {@link #insertRemoveSibling()}.
+     */
+    private TreePositionIndex<Integer> siblingIndex;
+
+    private final int[] flatPositions = new int[POSITION_COUNT];
+    private final List<TreePositionIndex.Node<Integer>> leaves = new ArrayList<>(POSITION_COUNT);
+    /**
+     * Nodes of the second level, each one holding the rows of two more levels.
+     */
+    private final List<TreePositionIndex.Node<Integer>> sites = new ArrayList<>(POSITION_COUNT);
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fanOut = Math.max(2, (int) Math.round(Math.pow(rowCount, 1.0 / DEPTH)));
+        index = buildTree();
+        mutableIndex = buildTree();
+        siblingIndex = new TreePositionIndex<>();
+        List<TreePositionIndex.Node<Integer>> siblings = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            siblings.add(siblingIndex.createNode(siblingIndex.getRoot(), i, false));
+        }
+        siblingIndex.insertChildren(siblingIndex.getRoot(), 0, siblings);
+
+        Random random = new Random(42);
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            flatPositions[i] = random.nextInt(index.getRowCount());
+            sites.add(mutableIndex.getRoot()
+                    .getChild(random.nextInt(fanOut))
+                    .getChild(random.nextInt(fanOut)));
+            leaves.add(index.getRoot()
+                    .getChild(random.nextInt(fanOut))
+                    .getChild(random.nextInt(fanOut))
+                    .getChild(random.nextInt(fanOut))
+                    .getChild(random.nextInt(fanOut)));
+        }
+    }
+
+    /**
+     * Inserts every node of the tree into an empty index, level by level.
+     */
+    @Benchmark
+    public TreePositionIndex<Integer> buildTree() {
+        TreePositionIndex<Integer> tree = new TreePositionIndex<>();
+        insertChildren(tree, tree.getRoot(), DEPTH);
+        return tree;
+    }
+
+    @Benchmark
+    public TreePositionIndex.Node<Integer> getNode() {
+        return index.getNode(flatPositions[next()]);
+    }
+
+    @Benchmark
+    public int getFlatPosition() {
+        return index.getFlatPosition(leaves.get(next()));
+    }
+
+    @Benchmark
+    public int expandCollapse() {
+        TreePositionIndex.Node<Integer> site = sites.get(next());
+        mutableIndex.setExpanded(site, !site.isExpanded());
+        return mutableIndex.getRowCount();
+    }
+
+    /**
+     * Inserts a node among the siblings and removes it again, at a random position.
+     */
+    @Benchmark
+    public int insertRemoveSibling() {
+        TreePositionIndex.Node<Integer> root = siblingIndex.getRoot();
+        int position = flatPositions[next()] % rowCount;
+        siblingIndex.insertChildren(root, position, Collections.singletonList(siblingIndex.createNode(root, -1, false)));
+        siblingIndex.removeChildren(root, position, 1);
+        return siblingIndex.getRowCount();
+    }
+
+    private void insertChildren(TreePositionIndex<Integer> tree, TreePositionIndex.Node<Integer> parent, int levels) {
+        List<TreePositionIndex.Node<Integer>> children = new ArrayList<>(fanOut);
+        for (int i = 0; i < fanOut; i++) {
+            children.add(tree.createNode(parent, i, true));
+        }
+        tree.insertChildren(parent, 0, children);
+        if (levels > 1) {
+            for (int i = 0; i < fanOut; i++) {
+                insertChildren(tree, children.get(i), levels - 1);
+            }
+        }
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (POSITION_COUNT - 1);
+        return cursor;
+    }
+}
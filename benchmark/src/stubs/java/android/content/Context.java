@@ -0,0 +1,7 @@
+package android.content;
+
+/**
+ * Stub of the Android class.
+ */
+public abstract class Context {
+}
@@ -0,0 +1,25 @@
+package android.os;
+
+/**
+ * Stub of the Android class, posted messages are dropped: the benchmarks measure the work done
+ * synchronously.
+ */
+public class Handler {
+
+    public Handler() {
+    }
+
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable r) {
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r) {
+    }
+}
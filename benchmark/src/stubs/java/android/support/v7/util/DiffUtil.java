@@ -0,0 +1,32 @@
+package android.support.v7.util;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Stub of the recyclerview-v7 class, which is only shipped as an Android library. Diffing is
+ * not benchmarked, {@link #calculateDiff(Callback, boolean)} isn't implemented.
+ */
+public class DiffUtil {
+
+    public static DiffResult calculateDiff(Callback callback, boolean detectMoves) {
+        throw new UnsupportedOperationException();
+    }
+
+    public abstract static class Callback {
+        public abstract int getOldListSize();
+
+        public abstract int getNewListSize();
+
+        public abstract boolean areItemsTheSame(int oldItemPosition, int newItemPosition);
+
+        public abstract boolean areContentsTheSame(int oldItemPosition, int newItemPosition);
+    }
+
+    public static class DiffResult {
+        public void dispatchUpdatesTo(ListUpdateCallback updateCallback) {
+        }
+
+        public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package android.support.v7.util;
+
+/**
+ * Copy of the recyclerview-v7 interface, which is only shipped as an Android library.
+ */
+public interface ListUpdateCallback {
+
+    void onInserted(int position, int count);
+
+    void onRemoved(int position, int count);
+
+    void onMoved(int fromPosition, int toPosition);
+
+    void onChanged(int position, int count, Object payload);
+}
@@ -0,0 +1,15 @@
+package android.support.v7.widget;
+
+/**
+ * Stub of the recyclerview-v7 class, which is only shipped as an Android library.
+ */
+public class LinearLayoutManager extends RecyclerView.LayoutManager {
+
+    public int findFirstVisibleItemPosition() {
+        return RecyclerView.NO_POSITION;
+    }
+
+    public int findLastVisibleItemPosition() {
+        return RecyclerView.NO_POSITION;
+    }
+}
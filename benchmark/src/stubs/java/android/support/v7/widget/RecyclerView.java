@@ -0,0 +1,137 @@
+package android.support.v7.widget;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.List;
+
+/**
+ * Stub of the recyclerview-v7 class, which is only shipped as an Android library. The adapter
+ * notifications reach no observer, so the benchmarks measure the adapter alone.
+ */
+public class RecyclerView extends ViewGroup {
+
+    public static final int NO_POSITION = -1;
+    public static final long NO_ID = -1;
+
+    public RecyclerView(Context context) {
+        super(context);
+    }
+
+    public LayoutManager getLayoutManager() {
+        return null;
+    }
+
+    public void addOnScrollListener(OnScrollListener listener) {
+    }
+
+    public void removeOnScrollListener(OnScrollListener listener) {
+    }
+
+    public ViewHolder findViewHolderForAdapterPosition(int position) {
+        return null;
+    }
+
+    public boolean post(Runnable action) {
+        return true;
+    }
+
+    public abstract static class ViewHolder {
+        public final View itemView;
+
+        public ViewHolder(View itemView) {
+            this.itemView = itemView;
+        }
+
+        public final int getAdapterPosition() {
+            return NO_POSITION;
+        }
+
+        public final int getLayoutPosition() {
+            return NO_POSITION;
+        }
+
+        public final int getItemViewType() {
+            return 0;
+        }
+    }
+
+    public abstract static class Adapter<VH extends ViewHolder> {
+
+        public abstract VH onCreateViewHolder(ViewGroup parent, int viewType);
+
+        public abstract void onBindViewHolder(VH holder, int position);
+
+        public void onBindViewHolder(VH holder, int position, List<Object> payloads) {
+            onBindViewHolder(holder, position);
+        }
+
+        public abstract int getItemCount();
+
+        public int getItemViewType(int position) {
+            return 0;
+        }
+
+        public long getItemId(int position) {
+            return NO_ID;
+        }
+
+        public void setHasStableIds(boolean hasStableIds) {
+        }
+
+        public final boolean hasStableIds() {
+            return false;
+        }
+
+        public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        }
+
+        public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        }
+
+        public void onViewRecycled(VH holder) {
+        }
+
+        public final void notifyDataSetChanged() {
+        }
+
+        public final void notifyItemChanged(int position) {
+        }
+
+        public final void notifyItemChanged(int position, Object payload) {
+        }
+
+        public final void notifyItemRangeChanged(int positionStart, int itemCount) {
+        }
+
+        public final void notifyItemRangeChanged(int positionStart, int itemCount, Object payload) {
+        }
+
+        public final void notifyItemInserted(int position) {
+        }
+
+        public final void notifyItemRangeInserted(int positionStart, int itemCount) {
+        }
+
+        public final void notifyItemMoved(int fromPosition, int toPosition) {
+        }
+
+        public final void notifyItemRemoved(int position) {
+        }
+
+        public final void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        }
+    }
+
+    public abstract static class LayoutManager {
+    }
+
+    public abstract static class OnScrollListener {
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        }
+
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package android.view;
+
+import android.content.Context;
+
+/**
+ * Stub of the Android class.
+ */
+public class View {
+
+    public View(Context context) {
+    }
+
+    public void setOnClickListener(OnClickListener listener) {
+    }
+
+    public interface OnClickListener {
+        void onClick(View v);
+    }
+}
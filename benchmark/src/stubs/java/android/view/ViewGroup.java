@@ -0,0 +1,13 @@
+package android.view;
+
+import android.content.Context;
+
+/**
+ * Stub of the Android class.
+ */
+public abstract class ViewGroup extends View {
+
+    public ViewGroup(Context context) {
+        super(context);
+    }
+}
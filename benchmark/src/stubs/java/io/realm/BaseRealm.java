@@ -0,0 +1,11 @@
+package io.realm;
+
+/**
+ * Stub of the Realm class.
+ */
+public abstract class BaseRealm {
+
+    public boolean isClosed() {
+        return false;
+    }
+}
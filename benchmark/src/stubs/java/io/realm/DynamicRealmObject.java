@@ -0,0 +1,23 @@
+package io.realm;
+
+/**
+ * Stub of the Realm class, only managed objects can be read dynamically.
+ */
+public class DynamicRealmObject extends RealmObject {
+
+    public DynamicRealmObject(RealmModel object) {
+        throw new UnsupportedOperationException("Unmanaged objects can't be read dynamically");
+    }
+
+    public <E> E get(String fieldName) {
+        throw new UnsupportedOperationException();
+    }
+
+    public String getType() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void setBoolean(String fieldName, boolean value) {
+        throw new UnsupportedOperationException();
+    }
+}
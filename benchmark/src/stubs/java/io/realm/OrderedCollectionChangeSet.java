@@ -0,0 +1,23 @@
+package io.realm;
+
+/**
+ * Stub of the Realm interface, with the ranges the adapters read.
+ */
+public interface OrderedCollectionChangeSet {
+
+    Range[] getDeletionRanges();
+
+    Range[] getInsertionRanges();
+
+    Range[] getChangeRanges();
+
+    class Range {
+        public final int startIndex;
+        public final int length;
+
+        public Range(int startIndex, int length) {
+            this.startIndex = startIndex;
+            this.length = length;
+        }
+    }
+}
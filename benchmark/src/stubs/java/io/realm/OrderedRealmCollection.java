@@ -0,0 +1,15 @@
+package io.realm;
+
+import java.util.List;
+
+/**
+ * Stub of the Realm interface, with the methods the adapters call.
+ */
+public interface OrderedRealmCollection<E extends RealmModel> extends List<E> {
+
+    boolean isValid();
+
+    boolean isManaged();
+
+    boolean isLoaded();
+}
@@ -0,0 +1,9 @@
+package io.realm;
+
+/**
+ * Stub of the Realm interface.
+ */
+public interface OrderedRealmCollectionChangeListener<T> {
+
+    void onChange(T collection, OrderedCollectionChangeSet changeSet);
+}
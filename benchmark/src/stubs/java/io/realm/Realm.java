@@ -0,0 +1,35 @@
+package io.realm;
+
+/**
+ * Stub of the Realm class, the benchmarks open no Realm.
+ */
+public class Realm extends BaseRealm {
+
+    private Realm() {
+    }
+
+    public RealmSchema getSchema() {
+        throw new UnsupportedOperationException();
+    }
+
+    public <E extends RealmModel> RealmQuery<E> where(Class<E> clazz) {
+        throw new UnsupportedOperationException();
+    }
+
+    public RealmAsyncTask executeTransactionAsync(Transaction transaction, Transaction.OnSuccess onSuccess,
+                                                  Transaction.OnError onError) {
+        throw new UnsupportedOperationException();
+    }
+
+    public interface Transaction {
+        void execute(Realm realm);
+
+        interface OnSuccess {
+            void onSuccess();
+        }
+
+        interface OnError {
+            void onError(Throwable error);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package io.realm;
+
+/**
+ * Stub of the Realm interface.
+ */
+public interface RealmAsyncTask {
+
+    void cancel();
+}
@@ -0,0 +1,52 @@
+package io.realm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stub of the Realm class backed by an {@link ArrayList}, reported managed so the adapters
+ * accept it.
+ * <p>
+ * Realm notifies the change listeners of a list after a commit, here the benchmarks notify
+ * them through {@link #notifyChangeListeners(OrderedCollectionChangeSet)} after updating the
+ * list themselves.
+ */
+public class RealmList<E extends RealmModel> extends ArrayList<E> implements OrderedRealmCollection<E> {
+
+    /**
+     * The Realm of the list, always open.
+     */
+    final BaseRealm realm = new BaseRealm() {
+    };
+
+    private final List<OrderedRealmCollectionChangeListener<RealmList<E>>> changeListeners = new ArrayList<>();
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Override
+    public boolean isManaged() {
+        return true;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return true;
+    }
+
+    public void addChangeListener(OrderedRealmCollectionChangeListener<RealmList<E>> listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(OrderedRealmCollectionChangeListener<RealmList<E>> listener) {
+        changeListeners.remove(listener);
+    }
+
+    public void notifyChangeListeners(OrderedCollectionChangeSet changeSet) {
+        for (int i = changeListeners.size() - 1; i >= 0; i--) {
+            changeListeners.get(i).onChange(this, changeSet);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package io.realm;
+
+/**
+ * Stub of the Realm interface.
+ */
+public interface RealmModel {
+}
@@ -0,0 +1,20 @@
+package io.realm;
+
+/**
+ * Stub of the Realm class. The objects of the benchmarks are plain Java objects, reported valid
+ * and unmanaged.
+ */
+public abstract class RealmObject implements RealmModel {
+
+    public static <E extends RealmModel> boolean isValid(E object) {
+        return true;
+    }
+
+    public static <E extends RealmModel> boolean isManaged(E object) {
+        return false;
+    }
+
+    public static Realm getRealm(RealmModel model) {
+        throw new UnsupportedOperationException("Unmanaged objects belong to no Realm");
+    }
+}
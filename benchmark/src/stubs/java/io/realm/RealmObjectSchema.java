@@ -0,0 +1,11 @@
+package io.realm;
+
+/**
+ * Stub of the Realm class.
+ */
+public abstract class RealmObjectSchema {
+
+    public abstract boolean hasPrimaryKey();
+
+    public abstract String getPrimaryKey();
+}
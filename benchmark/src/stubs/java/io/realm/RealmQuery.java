@@ -0,0 +1,13 @@
+package io.realm;
+
+/**
+ * Stub of the Realm class, the benchmarks run no query.
+ */
+public abstract class RealmQuery<E extends RealmModel> {
+
+    public abstract RealmQuery<E> in(String fieldName, String[] values);
+
+    public abstract RealmQuery<E> in(String fieldName, Long[] values);
+
+    public abstract RealmResults<E> findAll();
+}
@@ -0,0 +1,13 @@
+package io.realm;
+
+import java.util.AbstractList;
+
+/**
+ * Stub of the Realm class, the benchmarks display {@link RealmList}s.
+ */
+public abstract class RealmResults<E extends RealmModel> extends AbstractList<E> implements OrderedRealmCollection<E> {
+
+    public abstract void addChangeListener(OrderedRealmCollectionChangeListener<RealmResults<E>> listener);
+
+    public abstract void removeChangeListener(OrderedRealmCollectionChangeListener<RealmResults<E>> listener);
+}
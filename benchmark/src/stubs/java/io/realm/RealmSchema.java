@@ -0,0 +1,9 @@
+package io.realm;
+
+/**
+ * Stub of the Realm class.
+ */
+public abstract class RealmSchema {
+
+    public abstract RealmObjectSchema get(String className);
+}
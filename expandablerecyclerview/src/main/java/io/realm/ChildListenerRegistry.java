@@ -0,0 +1,177 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Registry of the listeners an adapter registers on the child lists of its parents.
+ * <p>
+ * Every registration is the identity of a listened parent: it knows the current position of
+ * its parent, which the registry updates as parents are inserted and removed, so listeners never
+ * need to be registered again after a structural change. Registrations are kept sorted by parent
+ * position, holding no slot for parents nobody listens to, so the memory taken is bounded by the
+ * number of live listeners rather than the number of parents.
+ * <p>
+ * Unregistering a parent, removing it, or clearing the registry always detaches the Realm
+ * listener, including from the child list of a deleted parent, unless the Realm itself is closed.
+ */
+class ChildListenerRegistry<C extends RealmModel> {
+
+    /**
+     * Listener of the child list of a parent, registered once per listened parent.
+     */
+    abstract static class Registration<C extends RealmModel> implements OrderedRealmCollectionChangeListener<RealmList<C>> {
+        @NonNull
+        final RealmList<C> childList;
+        int parentPosition;
+
+        Registration(@NonNull RealmList<C> childList, int parentPosition) {
+            this.childList = childList;
+            this.parentPosition = parentPosition;
+        }
+
+        /**
+         * @return The current position of the listened parent
+         */
+        int getParentPosition() {
+            return parentPosition;
+        }
+
+        private void detach() {
+            // the child list of a deleted parent is invalid, but its listener still has to go
+            if (!childList.realm.isClosed()) {
+                childList.removeChangeListener(this);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Registration<C>[] registrations = new Registration[8];
+    private int size;
+
+    /**
+     * @return The number of registered listeners
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The registration of the parent at {@code parentPosition}, or {@code null} if nobody
+     * listens to it, in O(log n)
+     */
+    @Nullable
+    Registration<C> get(int parentPosition) {
+        int index = indexOf(parentPosition);
+        return index >= 0 ? registrations[index] : null;
+    }
+
+    /**
+     * Adds a registration and attaches its listener to the child list.
+     *
+     * @throws IllegalStateException if the parent already has a registration
+     */
+    void register(@NonNull Registration<C> registration) {
+        int index = indexOf(registration.parentPosition);
+        if (index >= 0) {
+            throw new IllegalStateException("The parent at " + registration.parentPosition + " already has a listener");
+        }
+        index = -index - 1;
+        if (size == registrations.length) {
+            registrations = Arrays.copyOf(registrations, size * 2);
+        }
+        System.arraycopy(registrations, index, registrations, index + 1, size - index);
+        registrations[index] = registration;
+        size++;
+        registration.childList.addChangeListener(registration);
+    }
+
+    /**
+     * Detaches the listener of the parent at {@code parentPosition}, if any.
+     *
+     * @return true if a listener was detached
+     */
+    boolean unregister(int parentPosition) {
+        int index = indexOf(parentPosition);
+        if (index < 0) {
+            return false;
+        }
+        registrations[index].detach();
+        removeRange(index, index + 1);
+        return true;
+    }
+
+    /**
+     * Detaches every listener.
+     */
+    void unregisterAll() {
+        for (int i = size - 1; i >= 0; i--) {
+            registrations[i].detach();
+        }
+        removeRange(0, size);
+    }
+
+    /**
+     * Moves the registrations of the parents from {@code parentPosition} on after parents were
+     * inserted before them.
+     */
+    void insertParents(int parentPosition, int count) {
+        for (int i = lowerBound(parentPosition); i < size; i++) {
+            registrations[i].parentPosition += count;
+        }
+    }
+
+    /**
+     * Detaches the listeners of removed parents and moves the registrations of the parents after them.
+     *
+     * @return The number of detached listeners
+     */
+    int removeParents(int parentPosition, int count) {
+        int from = lowerBound(parentPosition);
+        int to = lowerBound(parentPosition + count);
+        for (int i = from; i < to; i++) {
+            registrations[i].detach();
+        }
+        removeRange(from, to);
+        for (int i = from; i < size; i++) {
+            registrations[i].parentPosition -= count;
+        }
+        return to - from;
+    }
+
+    private void removeRange(int from, int to) {
+        System.arraycopy(registrations, to, registrations, from, size - to);
+        Arrays.fill(registrations, size - (to - from), size, null);
+        size -= to - from;
+    }
+
+    /**
+     * @return The index of the registration of {@code parentPosition}, or {@code -(insertion index) - 1}
+     */
+    private int indexOf(int parentPosition) {
+        int index = lowerBound(parentPosition);
+        if (index < size && registrations[index].parentPosition == parentPosition) {
+            return index;
+        }
+        return -index - 1;
+    }
+
+    /**
+     * @return The index of the first registration at or after {@code parentPosition}
+     */
+    private int lowerBound(int parentPosition) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (registrations[middle].parentPosition < parentPosition) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
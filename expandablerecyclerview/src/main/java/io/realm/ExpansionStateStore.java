@@ -0,0 +1,247 @@
+package io.realm;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.model.Parent;
+
+/**
+ * Writes the expanded state of parents back to a boolean field of their Realm objects, the
+ * field {@link Parent#isExpanded()} reads, so parents show up with the same state the next
+ * time an adapter is created.
+ * <p>
+ * Changes are collected by primary key and written by a single
+ * {@link Realm#executeTransactionAsync(Realm.Transaction)} once no change arrived for the
+ * debounce window, so toggling parents quickly doesn't open a write transaction per tap.
+ * A parent toggled several times within the window is written once, with its last state.
+ * <p>
+ * Restoring needs no query: the adapter reads {@link Parent#isExpanded()} while flattening the
+ * parents, and asks the store first for parents whose state hasn't been written yet.
+ *
+ * @see RealmExpandableRecyclerAdapter#setExpansionStateStore(ExpansionStateStore)
+ */
+public class ExpansionStateStore<P extends Parent> {
+
+    /**
+     * Default time to wait for more changes before writing them.
+     */
+    public static final long DEFAULT_WRITE_DEBOUNCE_MILLIS = 500;
+
+    @NonNull
+    private final Realm realm;
+    @NonNull
+    private final Class<P> parentClass;
+    @NonNull
+    private final String expandedField;
+    @NonNull
+    private final String primaryKeyField;
+
+    private long writeDebounceMillis = DEFAULT_WRITE_DEBOUNCE_MILLIS;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * States waiting for the debounce window, by {@link RealmObjectKeys key}.
+     */
+    private final LinkedHashMap<Long, Boolean> pendingStates = new LinkedHashMap<>();
+    /**
+     * Primary keys of the parents with a pending state, by key.
+     */
+    private final HashMap<Long, Object> pendingPrimaryKeys = new HashMap<>();
+    /**
+     * States being written, by key, until the write is visible to {@link #realm}.
+     */
+    private final HashMap<Long, Boolean> writingStates = new HashMap<>();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param realm         The Realm the parents belong to, used to start the write transactions
+     * @param parentClass   The class of the parents, which must have a {@code @PrimaryKey}
+     * @param expandedField The name of the boolean field {@link Parent#isExpanded()} returns
+     * @throws IllegalArgumentException if {@code parentClass} has no primary key
+     */
+    public ExpansionStateStore(@NonNull Realm realm, @NonNull Class<P> parentClass, @NonNull String expandedField) {
+        RealmObjectSchema schema = realm.getSchema().get(parentClass.getSimpleName());
+        if (schema == null || !schema.hasPrimaryKey()) {
+            throw new IllegalArgumentException("Only parents with a @PrimaryKey can have their expanded state stored: "
+                    + parentClass.getSimpleName());
+        }
+        this.realm = realm;
+        this.parentClass = parentClass;
+        this.expandedField = expandedField;
+        this.primaryKeyField = schema.getPrimaryKey();
+    }
+
+    /**
+     * Sets the time to wait for more changes before writing them.
+     *
+     * @param writeDebounceMillis delay in milliseconds, defaults to {@link #DEFAULT_WRITE_DEBOUNCE_MILLIS}
+     */
+    @UiThread
+    public void setWriteDebounceMillis(long writeDebounceMillis) {
+        this.writeDebounceMillis = writeDebounceMillis;
+    }
+
+    /**
+     * Queues the expanded state of {@code parent} to be written.
+     */
+    @UiThread
+    public void setExpanded(@NonNull P parent, boolean expanded) {
+        queueExpanded(parent, expanded);
+        scheduleFlush();
+    }
+
+    /**
+     * Queues the expanded state of {@code parent} without scheduling its write, see
+     * {@link #scheduleFlush()}.
+     */
+    @UiThread
+    void queueExpanded(@NonNull P parent, boolean expanded) {
+        if (!RealmObject.isValid(parent)) {
+            return;
+        }
+        Object primaryKey = RealmObjectKeys.primaryKeyOf(parent);
+        long key = RealmObjectKeys.keyOf(primaryKey);
+        // re-inserted so the map keeps the order of the last changes
+        pendingStates.remove(key);
+        pendingStates.put(key, expanded);
+        pendingPrimaryKeys.put(key, primaryKey);
+    }
+
+    /**
+     * Restarts the debounce window of the queued states.
+     */
+    @UiThread
+    void scheduleFlush() {
+        if (pendingStates.isEmpty()) {
+            return;
+        }
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, writeDebounceMillis);
+    }
+
+    /**
+     * @return the last state set for {@code parent}, or {@link Parent#isExpanded()} if its state
+     * has been written or was never changed
+     */
+    @UiThread
+    public boolean isExpanded(@NonNull P parent) {
+        if (!hasQueuedStates() || !RealmObject.isValid(parent)) {
+            return parent.isExpanded();
+        }
+        return isExpanded(parent, RealmObjectKeys.of(parent));
+    }
+
+    /**
+     * Same as {@link #isExpanded(Parent)}, for callers that already read the key of {@code parent}.
+     *
+     * @param key the key {@link RealmObjectKeys#of(RealmModel)} returns for {@code parent}
+     */
+    @UiThread
+    boolean isExpanded(@NonNull P parent, long key) {
+        if (!hasQueuedStates() || key == RealmObjectKeys.NO_KEY) {
+            return parent.isExpanded();
+        }
+        Boolean expanded = pendingStates.get(key);
+        if (expanded == null) {
+            expanded = writingStates.get(key);
+        }
+        return expanded != null ? expanded : parent.isExpanded();
+    }
+
+    /**
+     * @return true if states are waiting to be written or being written, only then keys have to
+     * be read to look parents up
+     */
+    @UiThread
+    boolean hasQueuedStates() {
+        return !pendingStates.isEmpty() || !writingStates.isEmpty();
+    }
+
+    /**
+     * Writes the queued states right away, e.g. before the Realm is closed.
+     */
+    @UiThread
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (pendingStates.isEmpty() || realm.isClosed()) {
+            return;
+        }
+
+        final List<Object> expandedKeys = new ArrayList<>();
+        final List<Object> collapsedKeys = new ArrayList<>();
+        for (Map.Entry<Long, Boolean> state : pendingStates.entrySet()) {
+            (state.getValue() ? expandedKeys : collapsedKeys).add(pendingPrimaryKeys.get(state.getKey()));
+        }
+        final Map<Long, Boolean> writtenStates = new HashMap<>(pendingStates);
+        writingStates.putAll(pendingStates);
+        pendingStates.clear();
+        pendingPrimaryKeys.clear();
+
+        realm.executeTransactionAsync(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                writeStates(realm, expandedKeys, true);
+                writeStates(realm, collapsedKeys, false);
+            }
+        }, new Realm.Transaction.OnSuccess() {
+            @Override
+            public void onSuccess() {
+                releaseWritingStates(writtenStates);
+            }
+        }, new Realm.Transaction.OnError() {
+            @Override
+            public void onError(Throwable error) {
+                releaseWritingStates(writtenStates);
+            }
+        });
+    }
+
+    /**
+     * Drops the queued states without writing them.
+     */
+    @UiThread
+    public void cancel() {
+        handler.removeCallbacks(flushRunnable);
+        pendingStates.clear();
+        pendingPrimaryKeys.clear();
+    }
+
+    private void releaseWritingStates(@NonNull Map<Long, Boolean> writtenStates) {
+        for (Map.Entry<Long, Boolean> state : writtenStates.entrySet()) {
+            // a later write of the same parent owns the entry now
+            if (state.getValue().equals(writingStates.get(state.getKey()))) {
+                writingStates.remove(state.getKey());
+            }
+        }
+    }
+
+    private void writeStates(@NonNull Realm realm, @NonNull List<Object> primaryKeys, boolean expanded) {
+        if (primaryKeys.isEmpty()) {
+            return;
+        }
+        RealmQuery<P> query = realm.where(parentClass);
+        if (primaryKeys.get(0) instanceof String) {
+            query.in(primaryKeyField, primaryKeys.toArray(new String[primaryKeys.size()]));
+        } else {
+            query.in(primaryKeyField, primaryKeys.toArray(new Long[primaryKeys.size()]));
+        }
+        RealmResults<P> parents = query.findAll();
+        for (int i = 0, size = parents.size(); i < size; i++) {
+            new DynamicRealmObject(parents.get(i)).setBoolean(expandedField, expanded);
+        }
+    }
+}
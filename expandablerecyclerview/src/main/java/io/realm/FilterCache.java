@@ -0,0 +1,101 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recent filter results by input, least recently used first. The results are live, so they
+ * stay correct for as long as the filter settings don't change.
+ * <p>
+ * Besides reusing the results of an input as is, the cache finds the results a new input only
+ * narrows, e.g. the results of "ta" for "tac", so its query can run against them instead of
+ * the whole data.
+ *
+ * @param <R> the type of the results
+ */
+abstract class FilterCache<R> {
+
+    private int maxSize;
+    private final LinkedHashMap<String, R> results = new LinkedHashMap<String, R>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, R> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    FilterCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return false if {@code results} can't be read anymore, e.g. because their Realm was closed
+     */
+    abstract boolean isValid(@NonNull R results);
+
+    /**
+     * @return the results of {@code input}, or {@code null} if they aren't cached or not valid
+     * anymore
+     */
+    @Nullable
+    R get(@NonNull String input) {
+        R cached = results.get(input);
+        if (cached != null && !isValid(cached)) {
+            results.remove(input);
+            return null;
+        }
+        return cached;
+    }
+
+    void put(@NonNull String input, @NonNull R cached) {
+        results.put(input, cached);
+    }
+
+    /**
+     * Finds the results the results of {@code input} are a subset of, when the predicate of
+     * {@code input} only narrows a cached one.
+     * <p>
+     * A string containing (or starting with) {@code input} also contains (or starts with) any
+     * substring (or prefix) of {@code input}, whatever the casing, so the check is exact. The
+     * results of the empty input are never refined, as they may be filtered by another predicate.
+     *
+     * @param useContains true if inputs are matched anywhere in the filtered field, false if
+     *                    they are matched at its start
+     * @return the results of the longest such cached input, or {@code null} if there is none
+     */
+    @Nullable
+    R findNarrowedResults(@NonNull String input, boolean useContains) {
+        R base = null;
+        int baseLength = 0;
+        for (Map.Entry<String, R> entry : results.entrySet()) {
+            String cachedInput = entry.getKey();
+            if (cachedInput.length() <= baseLength || !isValid(entry.getValue())) {
+                continue;
+            }
+            boolean narrows = useContains ? input.contains(cachedInput) : input.startsWith(cachedInput);
+            if (narrows) {
+                base = entry.getValue();
+                baseLength = cachedInput.length();
+            }
+        }
+        return base;
+    }
+
+    /**
+     * Sets how many results are kept, dropping the cached ones.
+     */
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        results.clear();
+    }
+
+    void clear() {
+        results.clear();
+    }
+
+    int size() {
+        return results.size();
+    }
+}
@@ -0,0 +1,115 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
+
+/**
+ * Keys of every row of a flattened list of parents and children.
+ * <p>
+ * Snapshots are captured on the UI thread, where the Realm objects can be read, and only hold
+ * primitive arrays, so two of them can be diffed on any thread. Child rows are identified by
+ * the key of their parent as well as their own, so a child that is listed under several parents
+ * is a different row under each of them.
+ */
+class FlatListSnapshot {
+
+    private long[] parentKeys;
+    private long[] childKeys;
+    private boolean[] parentRows;
+    private boolean[] expanded;
+    private int size;
+
+    FlatListSnapshot(int capacity) {
+        capacity = Math.max(capacity, 1);
+        parentKeys = new long[capacity];
+        childKeys = new long[capacity];
+        parentRows = new boolean[capacity];
+        expanded = new boolean[capacity];
+    }
+
+    void addParent(long parentKey, boolean parentExpanded) {
+        add(parentKey, RealmObjectKeys.NO_KEY, true, parentExpanded);
+    }
+
+    void addChild(long parentKey, long childKey) {
+        add(parentKey, childKey, false, false);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void add(long parentKey, long childKey, boolean parentRow, boolean parentExpanded) {
+        if (size == parentKeys.length) {
+            int capacity = size * 2;
+            parentKeys = grow(parentKeys, capacity);
+            childKeys = grow(childKeys, capacity);
+            parentRows = grow(parentRows, capacity);
+            expanded = grow(expanded, capacity);
+        }
+        parentKeys[size] = parentKey;
+        childKeys[size] = childKey;
+        parentRows[size] = parentRow;
+        expanded[size] = parentExpanded;
+        size++;
+    }
+
+    private boolean isSameRow(int position, @NonNull FlatListSnapshot other, int otherPosition) {
+        if (parentKeys[position] == RealmObjectKeys.NO_KEY
+                || parentRows[position] != other.parentRows[otherPosition]
+                || parentKeys[position] != other.parentKeys[otherPosition]) {
+            return false;
+        }
+        return parentRows[position]
+                || (childKeys[position] != RealmObjectKeys.NO_KEY && childKeys[position] == other.childKeys[otherPosition]);
+    }
+
+    /**
+     * Realm objects are live, so the content of a row that is the same in both snapshots only
+     * differs by the expanded state of a parent; field changes are reported by Realm listeners.
+     */
+    private boolean isSameContent(int position, @NonNull FlatListSnapshot other, int otherPosition) {
+        return expanded[position] == other.expanded[otherPosition];
+    }
+
+    /**
+     * @return a callback for {@link DiffUtil} computing the updates turning {@code oldRows}
+     * into {@code newRows}
+     */
+    @NonNull
+    static DiffUtil.Callback diffCallback(@NonNull final FlatListSnapshot oldRows, @NonNull final FlatListSnapshot newRows) {
+        return new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldRows.size;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newRows.size;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldRows.isSameRow(oldItemPosition, newRows, newItemPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldRows.isSameContent(oldItemPosition, newRows, newItemPosition);
+            }
+        };
+    }
+
+    private static long[] grow(long[] array, int capacity) {
+        long[] grown = new long[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private static boolean[] grow(boolean[] array, int capacity) {
+        boolean[] grown = new boolean[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
@@ -0,0 +1,295 @@
+package io.realm;
+
+/**
+ * Index over the number of rows each parent occupies in the flattened list of
+ * parents and children, along with the expanded state of every parent.
+ * <p>
+ * A parent occupies one row for itself plus one row per visible child. The row counts are kept
+ * in a Fenwick tree, so translating between flat positions and parent/child positions costs
+ * O(log n) instead of a walk over the flattened list, and expanding or collapsing a parent
+ * only updates O(log n) entries.
+ * <p>
+ * Inserting or removing parents shifts the primitive arrays and marks the tree stale from the
+ * first affected parent on. The stale part is recomputed on the next query that needs it, so a
+ * batch of changes applied from the end of the list towards its start only pays for it once.
+ * <p>
+ * The index only holds primitive arrays, which lets it describe the flattened list on its own
+ * when no {@link io.realm.model.ExpandableWrapper} is materialized per row.
+ */
+class FlatPositionIndex {
+
+    static final int NO_POSITION = -1;
+
+    private int[] rowCounts;
+    private boolean[] expanded;
+    private int[] tree;
+    private int parentCount;
+    private int flatItemCount;
+
+    /**
+     * Entries {@code [1, validTreeSize]} of {@link #tree} are up to date.
+     */
+    private int validTreeSize;
+
+    FlatPositionIndex() {
+        rowCounts = new int[0];
+        expanded = new boolean[0];
+        tree = new int[1];
+    }
+
+    /**
+     * Replaces the content of the index in O(n).
+     *
+     * @param rowCounts   The number of rows of each parent, including the parent row itself
+     * @param expanded    The expanded state of each parent
+     * @param parentCount The number of valid entries in {@code rowCounts} and {@code expanded}
+     */
+    void rebuild(int[] rowCounts, boolean[] expanded, int parentCount) {
+        ensureCapacity(parentCount);
+        System.arraycopy(rowCounts, 0, this.rowCounts, 0, parentCount);
+        System.arraycopy(expanded, 0, this.expanded, 0, parentCount);
+        this.parentCount = parentCount;
+
+        int total = 0;
+        for (int i = 0; i < parentCount; i++) {
+            total += rowCounts[i];
+        }
+        flatItemCount = total;
+        validTreeSize = 0;
+        updateTree(parentCount);
+    }
+
+    /**
+     * Inserts parents into the index.
+     *
+     * @param parentPosition index relative to the parent list of the first inserted parent
+     * @param rowCounts      The number of rows of each inserted parent
+     * @param expanded       The expanded state of each inserted parent
+     * @param count          The number of inserted parents
+     */
+    void insertParents(int parentPosition, int[] rowCounts, boolean[] expanded, int count) {
+        ensureCapacity(parentCount + count);
+        int tail = parentCount - parentPosition;
+        System.arraycopy(this.rowCounts, parentPosition, this.rowCounts, parentPosition + count, tail);
+        System.arraycopy(this.expanded, parentPosition, this.expanded, parentPosition + count, tail);
+        System.arraycopy(rowCounts, 0, this.rowCounts, parentPosition, count);
+        System.arraycopy(expanded, 0, this.expanded, parentPosition, count);
+        for (int i = 0; i < count; i++) {
+            flatItemCount += rowCounts[i];
+        }
+        parentCount += count;
+        invalidateFrom(parentPosition);
+    }
+
+    /**
+     * Removes parents from the index.
+     *
+     * @param parentPosition index relative to the parent list of the first removed parent
+     * @param count          The number of removed parents
+     */
+    void removeParents(int parentPosition, int count) {
+        for (int i = parentPosition; i < parentPosition + count; i++) {
+            flatItemCount -= rowCounts[i];
+        }
+        int tail = parentCount - parentPosition - count;
+        System.arraycopy(rowCounts, parentPosition + count, rowCounts, parentPosition, tail);
+        System.arraycopy(expanded, parentPosition + count, expanded, parentPosition, tail);
+        parentCount -= count;
+        invalidateFrom(parentPosition);
+    }
+
+    /**
+     * @return The number of parents in the index
+     */
+    int getParentCount() {
+        return parentCount;
+    }
+
+    /**
+     * @return The number of parent and child rows in the index
+     */
+    int getFlatItemCount() {
+        return flatItemCount;
+    }
+
+    /**
+     * @return The number of rows of the parent at {@code parentPosition}, including its own row
+     */
+    int getRowCount(int parentPosition) {
+        return rowCounts[parentPosition];
+    }
+
+    /**
+     * @return The number of rows of {@code count} consecutive parents, starting with the
+     * parent at {@code parentPosition}
+     */
+    int getRowCount(int parentPosition, int count) {
+        return prefixSum(parentPosition + count) - prefixSum(parentPosition);
+    }
+
+    /**
+     * @return true if the parent at {@code parentPosition} is expanded
+     */
+    boolean isExpanded(int parentPosition) {
+        return expanded[parentPosition];
+    }
+
+    /**
+     * Updates the expanded state and the number of rows of a parent.
+     *
+     * @param parentPosition index relative to the parent list
+     * @param expanded       true if the parent is now expanded
+     * @param rowCount       new number of rows, including the parent row itself
+     */
+    void setExpanded(int parentPosition, boolean expanded, int rowCount) {
+        this.expanded[parentPosition] = expanded;
+        setRowCount(parentPosition, rowCount);
+    }
+
+    /**
+     * Updates the number of rows of a parent, e.g. when children are added to an expanded parent.
+     *
+     * @param parentPosition index relative to the parent list
+     * @param rowCount       new number of rows, including the parent row itself
+     */
+    void setRowCount(int parentPosition, int rowCount) {
+        int delta = rowCount - rowCounts[parentPosition];
+        if (delta == 0) {
+            return;
+        }
+        rowCounts[parentPosition] = rowCount;
+        flatItemCount += delta;
+        if (validTreeSize < parentCount) {
+            invalidateFrom(parentPosition);
+            return;
+        }
+        for (int i = parentPosition + 1; i <= parentCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @param parentPosition index relative to the parent list for a parent item
+     * @return parent position relative to the flattened list or {@link #NO_POSITION}
+     * if there aren't that many parents
+     */
+    int getFlatParentPosition(int parentPosition) {
+        if (parentPosition < 0 || parentPosition >= parentCount) {
+            return NO_POSITION;
+        }
+        return prefixSum(parentPosition);
+    }
+
+    /**
+     * Given an index relative to the flattened list, returns the position of the parent
+     * that owns the row. Rows past the end of the list resolve to {@link #getParentCount()}.
+     */
+    int getNearestParentPosition(int flatPosition) {
+        return parentPositionOf(locate(flatPosition));
+    }
+
+    /**
+     * Given an index relative to the flattened list for a child item, returns the
+     * child position within the child list of its parent, or {@link #NO_POSITION}
+     * if the row is a parent.
+     */
+    int getChildPosition(int flatPosition) {
+        return childPositionOf(locate(flatPosition));
+    }
+
+    /**
+     * Resolves both the parent and the child position of a row with a single search, for the
+     * callers that need both, e.g. on each bind.
+     *
+     * @return the positions of the row, read with {@link #parentPositionOf(long)} and
+     * {@link #childPositionOf(long)}
+     */
+    long locate(int flatPosition) {
+        updateTree(parentCount);
+        int position = 0;
+        int remaining = flatPosition;
+        for (int step = Integer.highestOneBit(Math.max(parentCount, 1)); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= parentCount && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return ((long) position << 32) | ((remaining - 1) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the parent position of a row resolved by {@link #locate(int)}
+     */
+    static int parentPositionOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    /**
+     * @return the child position of a row resolved by {@link #locate(int)}, or {@link #NO_POSITION}
+     * if the row is a parent
+     */
+    static int childPositionOf(long location) {
+        return (int) location;
+    }
+
+    /**
+     * @return The number of rows of the first {@code count} parents
+     */
+    private int prefixSum(int count) {
+        updateTree(count);
+        int sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private void invalidateFrom(int parentPosition) {
+        validTreeSize = Math.min(validTreeSize, parentPosition);
+    }
+
+    /**
+     * Recomputes the stale entries of the tree if any of the first {@code size} entries is stale.
+     * Costs O(n - validTreeSize + log n).
+     */
+    private void updateTree(int size) {
+        if (size <= validTreeSize) {
+            return;
+        }
+        int valid = validTreeSize;
+        for (int i = valid + 1; i <= parentCount; i++) {
+            tree[i] = rowCounts[i - 1];
+        }
+        // up to date entries whose range ends past the stale boundary feed into stale entries
+        for (int i = valid; i > 0; i -= i & -i) {
+            int next = i + (i & -i);
+            if (next <= parentCount) {
+                tree[next] += tree[i];
+            }
+        }
+        for (int i = valid + 1; i <= parentCount; i++) {
+            int next = i + (i & -i);
+            if (next <= parentCount) {
+                tree[next] += tree[i];
+            }
+        }
+        validTreeSize = parentCount;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (rowCounts.length >= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, rowCounts.length + (rowCounts.length >> 1));
+        int[] newRowCounts = new int[newCapacity];
+        boolean[] newExpanded = new boolean[newCapacity];
+        System.arraycopy(rowCounts, 0, newRowCounts, 0, parentCount);
+        System.arraycopy(expanded, 0, newExpanded, 0, parentCount);
+        rowCounts = newRowCounts;
+        expanded = newExpanded;
+        int[] newTree = new int[newCapacity + 1];
+        System.arraycopy(tree, 0, newTree, 0, Math.min(tree.length, validTreeSize + 1));
+        tree = newTree;
+    }
+}
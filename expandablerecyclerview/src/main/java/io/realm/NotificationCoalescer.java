@@ -0,0 +1,169 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.v7.util.ListUpdateCallback;
+
+/**
+ * {@link ListUpdateCallback} that merges contiguous row updates before forwarding them.
+ * <p>
+ * Outside of a batch every update is forwarded immediately. Between {@link #beginBatch()} and
+ * {@link #endBatch()}, updates are queued and each one is merged with the previous update when
+ * both are of the same kind and cover adjacent or overlapping rows, e.g. the rows of parents
+ * deleted one by one. The queue is dispatched once, in order, when the outermost batch ends.
+ */
+class NotificationCoalescer implements ListUpdateCallback {
+
+    private static final int TYPE_INSERTED = 0;
+    private static final int TYPE_REMOVED = 1;
+    private static final int TYPE_CHANGED = 2;
+    private static final int TYPE_MOVED = 3;
+
+    @NonNull
+    private final ListUpdateCallback target;
+
+    // each pending update takes three slots: type, position and count (or target position)
+    private int[] updates = new int[3 * 8];
+    private Object[] payloads = new Object[8];
+    private int updateCount;
+    private int batchDepth;
+
+    NotificationCoalescer(@NonNull ListUpdateCallback target) {
+        this.target = target;
+    }
+
+    /**
+     * Starts queuing updates. Batches can be nested; only the outermost one dispatches.
+     */
+    void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch and dispatches the queued updates if it was the outermost one.
+     */
+    void endBatch() {
+        if (--batchDepth == 0) {
+            dispatch();
+        }
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int last = updateCount - 1;
+        if (last >= 0 && typeAt(last) == TYPE_INSERTED) {
+            int lastPosition = positionAt(last);
+            int lastCount = countAt(last);
+            // inserting anywhere inside or next to the previous block keeps it contiguous
+            if (position >= lastPosition && position <= lastPosition + lastCount) {
+                updates[3 * last + 2] = lastCount + count;
+                return;
+            }
+        }
+        add(TYPE_INSERTED, position, count, null);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int last = updateCount - 1;
+        if (last >= 0 && typeAt(last) == TYPE_REMOVED) {
+            int lastPosition = positionAt(last);
+            int lastCount = countAt(last);
+            // the previous block is gone, so a removal touching its position is contiguous with it
+            if (position <= lastPosition && lastPosition <= position + count) {
+                updates[3 * last + 1] = position;
+                updates[3 * last + 2] = lastCount + count;
+                return;
+            }
+        }
+        add(TYPE_REMOVED, position, count, null);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        if (count <= 0) {
+            return;
+        }
+        int last = updateCount - 1;
+        if (last >= 0 && typeAt(last) == TYPE_CHANGED && payload == null && payloads[last] == null) {
+            int lastPosition = positionAt(last);
+            int lastEnd = lastPosition + countAt(last);
+            if (position <= lastEnd && lastPosition <= position + count) {
+                int start = Math.min(position, lastPosition);
+                int end = Math.max(position + count, lastEnd);
+                updates[3 * last + 1] = start;
+                updates[3 * last + 2] = end - start;
+                return;
+            }
+        }
+        add(TYPE_CHANGED, position, count, payload);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        add(TYPE_MOVED, fromPosition, toPosition, null);
+    }
+
+    private void add(int type, int position, int count, Object payload) {
+        if (batchDepth == 0) {
+            forward(type, position, count, payload);
+            return;
+        }
+        if (updateCount == payloads.length) {
+            int[] newUpdates = new int[updates.length * 2];
+            System.arraycopy(updates, 0, newUpdates, 0, updates.length);
+            updates = newUpdates;
+            Object[] newPayloads = new Object[payloads.length * 2];
+            System.arraycopy(payloads, 0, newPayloads, 0, payloads.length);
+            payloads = newPayloads;
+        }
+        updates[3 * updateCount] = type;
+        updates[3 * updateCount + 1] = position;
+        updates[3 * updateCount + 2] = count;
+        payloads[updateCount] = payload;
+        updateCount++;
+    }
+
+    private void dispatch() {
+        int count = updateCount;
+        updateCount = 0;
+        for (int i = 0; i < count; i++) {
+            forward(typeAt(i), positionAt(i), countAt(i), payloads[i]);
+            payloads[i] = null;
+        }
+    }
+
+    private void forward(int type, int position, int count, Object payload) {
+        switch (type) {
+            case TYPE_INSERTED:
+                target.onInserted(position, count);
+                break;
+            case TYPE_REMOVED:
+                target.onRemoved(position, count);
+                break;
+            case TYPE_CHANGED:
+                target.onChanged(position, count, payload);
+                break;
+            case TYPE_MOVED:
+                target.onMoved(position, count);
+                break;
+        }
+    }
+
+    private int typeAt(int index) {
+        return updates[3 * index];
+    }
+
+    private int positionAt(int index) {
+        return updates[3 * index + 1];
+    }
+
+    private int countAt(int index) {
+        return updates[3 * index + 2];
+    }
+}
@@ -1,20 +1,27 @@
 package io.realm;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.ViewGroup;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import io.realm.model.Child;
 import io.realm.model.ExpandableWrapper;
 import io.realm.model.Parent;
 
-import static android.support.v7.widget.RecyclerView.NO_POSITION;
-
 /**
  * RecyclerView.Adapter implementation that
  * adds the ability to expand and collapse list items.
@@ -31,23 +38,254 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
      */
     public static final int TYPE_CHILD = 1;
 
+    private static final int NO_CHILD_LISTENER_WINDOW = -1;
+    private static final int NO_CHILD_PAGING = 0;
+
+    /**
+     * Number of old and new rows from which {@link #updateData(OrderedRealmCollection)}
+     * computes its diff on {@link #diffExecutor} instead of the UI thread.
+     */
+    private static final int BACKGROUND_DIFF_THRESHOLD = 1000;
+
+    /**
+     * Number of parents a bulk expand or collapse notifies one by one. Past it, the whole data
+     * set is notified as changed, as queuing a range per parent costs more than rebinding the
+     * visible rows.
+     */
+    private static final int BULK_NOTIFICATION_LIMIT = 64;
+
+    @Nullable
+    private static Executor diffExecutor;
+
     private final OrderedRealmCollectionChangeListener parentCollectionListener;
-    private final List<Triplet<RealmList<C>, OrderedRealmCollectionChangeListener<RealmList<C>>, List<RealmObjectChangeListener<C>>>> childCollectionListeners;
+    /**
+     * Child list listeners of the listened parents, spliced along with the parents.
+     */
+    @NonNull
+    private final ChildListenerRegistry<C> childListenerRegistry = new ChildListenerRegistry<>();
 
     /**
-     * A {@link List} of all currently expanded parents and their children, in order.
-     * Changes to this list should be made through the add/remove methods
-     * available in {@link RealmExpandableRecyclerAdapter}.
+     * A read-only {@link List} of all currently expanded parents and their children, in order.
+     *
+     * @deprecated The rows are no longer stored in this list. It is a view that throws
+     * {@link UnsupportedOperationException} on any change, and it is always empty when the
+     * adapter uses a virtual flat list. Read the rows through {@link #getData()},
+     * {@link #getItemCount()} and the positions passed to the bind methods, and change them
+     * through the methods of this adapter.
      */
+    @Deprecated
     @NonNull
     protected List<ExpandableWrapper<P, C>> flatItemList;
 
+    /**
+     * Expanded state and row counts of every parent, used to translate between
+     * flat positions and parent/child positions without walking the flattened list.
+     */
+    @NonNull
+    private final FlatPositionIndex positionIndex = new FlatPositionIndex();
+
+    /**
+     * The wrappers of the parents, each holding its wrapped children, backing {@link #flatItemList}.
+     */
+    @NonNull
+    private final SegmentedFlatList<P, C> segmentedFlatList = new SegmentedFlatList<>(positionIndex);
+
+    /**
+     * When true, rows are resolved straight from {@link #parentList} through
+     * {@link #positionIndex} and no {@link ExpandableWrapper} is created.
+     */
+    private final boolean virtualFlatList;
+
+    /**
+     * Merges the row updates of a Realm notification before they reach the RecyclerView.
+     */
+    @NonNull
+    private final NotificationCoalescer notifications = new NotificationCoalescer(new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            structureVersion++;
+            notificationCount++;
+            if (viewTypeCache != null) {
+                viewTypeCache.insert(position, count);
+            }
+            if (rowProjectionCache != null) {
+                rowProjectionCache.insert(position, count);
+            }
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            structureVersion++;
+            notificationCount++;
+            if (viewTypeCache != null) {
+                viewTypeCache.remove(position, count);
+            }
+            if (rowProjectionCache != null) {
+                rowProjectionCache.remove(position, count);
+            }
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            structureVersion++;
+            notificationCount++;
+            if (viewTypeCache != null) {
+                viewTypeCache.move(fromPosition, toPosition);
+            }
+            if (rowProjectionCache != null) {
+                rowProjectionCache.move(fromPosition, toPosition);
+            }
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notificationCount++;
+            if (viewTypeCache != null) {
+                viewTypeCache.invalidate(position, count);
+            }
+            if (rowProjectionCache != null) {
+                rowProjectionCache.invalidate(position, count);
+            }
+            notifyItemRangeChanged(position, count, payload);
+        }
+    });
+
     @NonNull
     private OrderedRealmCollection<P> parentList;
 
     @Nullable
     private ExpandCollapseListener expandCollapseListener;
 
+    /**
+     * The RecyclerView this adapter is attached to, child listeners are only registered while attached.
+     */
+    @Nullable
+    private RecyclerView recyclerView;
+
+    /**
+     * Number of rows around the visible ones whose parents keep their child listener,
+     * or {@link #NO_CHILD_LISTENER_WINDOW} to listen to every expanded parent.
+     */
+    private int childListenerWindowMargin = NO_CHILD_LISTENER_WINDOW;
+    private int windowFirstParentPosition;
+    private int windowLastParentPosition = -1;
+    private boolean windowUpdatePending;
+
+    /**
+     * Number of children an expanded parent displays at first and loads at a time,
+     * or {@link #NO_CHILD_PAGING} to display every child.
+     */
+    private int childPageSize = NO_CHILD_PAGING;
+
+    private boolean diffOnUpdate = true;
+    /**
+     * Incremented every time rows are inserted, removed or moved, so a diff computed against
+     * an older structure is never dispatched.
+     */
+    private int structureVersion;
+    @Nullable
+    private PendingUpdate pendingUpdate;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull
+    private final KeyExtractor<P, C> primaryKeyExtractor = new PrimaryKeyExtractor();
+    @NonNull
+    private KeyExtractor<? super P, ? super C> keyExtractor = primaryKeyExtractor;
+
+    @Nullable
+    private ExpansionStateStore<P> expansionStateStore;
+
+    /**
+     * View types of the rows, {@code null} unless enabled through {@link #setViewTypeCacheEnabled(boolean)}.
+     */
+    @Nullable
+    private ViewTypeCache viewTypeCache;
+
+    @Nullable
+    private RowProjector<? super P, ? super C> rowProjector;
+    /**
+     * Projections of the recently bound rows, {@code null} unless a {@link RowProjector} is set.
+     */
+    @Nullable
+    private RowProjectionCache rowProjectionCache;
+    /**
+     * Number of rows ahead of the scrolling direction whose projection is computed in advance.
+     */
+    private int rowProjectionPrefetch;
+    private int prefetchFirstVisiblePosition;
+    private boolean prefetchPending;
+
+    @Nullable
+    private MetricsListener metricsListener;
+    /**
+     * Number of notifications forwarded to the RecyclerView, to count those of a change set.
+     */
+    private int notificationCount;
+    /**
+     * Number of Realm change listeners currently registered by the adapter.
+     */
+    private int listenerCount;
+
+    /**
+     * Listener of the child list of a parent. It doesn't capture the position of the parent:
+     * {@link #childListenerRegistry} updates it as other parents are inserted and removed, and
+     * a change set is only applied if the listener is still the one registered at that position,
+     * so the rows it notifies are always those of its parent.
+     */
+    private final class ChildCollectionListener extends ChildListenerRegistry.Registration<C> {
+
+        ChildCollectionListener(@NonNull RealmList<C> childList, int parentPosition) {
+            super(childList, parentPosition);
+        }
+
+        @Override
+        public void onChange(RealmList<C> collection, OrderedCollectionChangeSet changeSet) {
+            // the position index resolves the rows of the parent from its current position
+            int parentPosition = getParentPosition();
+            if (childListenerRegistry.get(parentPosition) != this || !positionIndex.isExpanded(parentPosition)) {
+                return;
+            }
+
+            // without a change set, only the child count can be reconciled
+            if (changeSet == null) {
+                syncChildCount(parentPosition);
+                return;
+            }
+
+            long startNanos = metricsListener != null ? System.nanoTime() : 0;
+            int firstNotification = notificationCount;
+            notifications.beginBatch();
+            try {
+                applyChildChangeSet(parentPosition, collection.size(), changeSet);
+            } finally {
+                notifications.endBatch();
+            }
+            reportChangeSetApplied(startNanos, firstNotification);
+        }
+    }
+
+    /**
+     * Data passed to {@link #updateData(OrderedRealmCollection)} whose diff against the
+     * displayed rows is being computed.
+     */
+    private final class PendingUpdate {
+        @NonNull
+        final OrderedRealmCollection<P> data;
+        final int structureVersion;
+        final int rowCount;
+        boolean listening;
+        boolean dataChanged;
+
+        PendingUpdate(@NonNull OrderedRealmCollection<P> data, int structureVersion, int rowCount) {
+            this.data = data;
+            this.structureVersion = structureVersion;
+            this.rowCount = rowCount;
+        }
+    }
+
     /**
      * Allows objects to register themselves as expand/collapse listeners to be
      * notified of change events.
@@ -73,6 +311,148 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
         void onParentCollapsed(int parentPosition);
     }
 
+    /**
+     * Selects the parents of a bulk expand or collapse.
+     */
+    public interface ParentPredicate<P> {
+        /**
+         * @param parent a parent of the adapter
+         * @return true to expand or collapse {@code parent}
+         */
+        boolean apply(@NonNull P parent);
+    }
+
+    /**
+     * Extracts the keys identifying parents and children, used for the item ids when stable ids
+     * are enabled through {@link #setHasStableIds(boolean)}, and to match rows in
+     * {@link #updateData(OrderedRealmCollection)}.
+     * <p>
+     * Keys should stay the same across changes to the Realm, the way primary keys do.
+     */
+    public interface KeyExtractor<P, C> {
+        /**
+         * @param parent a valid parent
+         * @return the key identifying {@code parent} among the parents
+         */
+        long getParentKey(@NonNull P parent);
+
+        /**
+         * @param child a valid child
+         * @return the key identifying {@code child} among the children
+         */
+        long getChildKey(@NonNull C child);
+    }
+
+    /**
+     * Maps parents and children to lightweight immutable view models, so rows bound again while
+     * scrolling read them instead of the fields of the Realm objects.
+     * <p>
+     * Projections shouldn't hold on to the Realm objects themselves, and should only read what
+     * the rows display: a projection is only computed again once a change set reports its row
+     * as changed.
+     *
+     * @see #setRowProjector(RowProjector, int)
+     */
+    public interface RowProjector<P, C> {
+        /**
+         * @param parent a valid parent
+         * @return the view model of the row of {@code parent}
+         */
+        @NonNull
+        @UiThread
+        Object projectParent(@NonNull P parent);
+
+        /**
+         * @param child a valid child
+         * @return the view model of the row of {@code child}
+         */
+        @NonNull
+        @UiThread
+        Object projectChild(@NonNull C child);
+    }
+
+    /**
+     * Receives timings and counters of the work done by the adapter, e.g. to feed them to an
+     * app's own telemetry. Callbacks only take primitives, and nothing is timed or counted while
+     * no listener is set, so the adapter allocates nothing for it in that case.
+     *
+     * @see #setMetricsListener(MetricsListener)
+     */
+    public interface MetricsListener {
+        /**
+         * Called once a row is bound.
+         *
+         * @param viewType  the view type of the bound row
+         * @param bindNanos time spent in {@link #onBindViewHolder(RecyclerView.ViewHolder, int)},
+         *                  including the position translation and the bind callback
+         */
+        @UiThread
+        void onRowBound(int viewType, long bindNanos);
+
+        /**
+         * Called once a flat position was translated into a parent and child position, to bind
+         * a row or get its view type.
+         *
+         * @param translationNanos time spent querying the position index
+         */
+        @UiThread
+        void onPositionTranslated(long translationNanos);
+
+        /**
+         * Called once the parents were flattened into rows.
+         *
+         * @param parentCount  the number of parents
+         * @param rowCount     the number of rows
+         * @param flattenNanos time spent flattening them
+         */
+        @UiThread
+        void onFlattened(int parentCount, int rowCount, long flattenNanos);
+
+        /**
+         * Called once parents were expanded or collapsed, one at a time or in bulk.
+         *
+         * @param parentCount    the number of parents whose state changed
+         * @param expanded       true if they were expanded, false if they were collapsed
+         * @param expansionNanos time spent updating the rows and notifying them
+         */
+        @UiThread
+        void onExpansionChanged(int parentCount, boolean expanded, long expansionNanos);
+
+        /**
+         * Called once a change set of the parent list or of a child list was applied.
+         *
+         * @param notificationCount the number of notifications sent to the RecyclerView
+         * @param applyNanos        time spent applying the change set
+         */
+        @UiThread
+        void onChangeSetApplied(int notificationCount, long applyNanos);
+
+        /**
+         * Called when the adapter registers or removes a Realm change listener.
+         *
+         * @param listenerCount the number of Realm change listeners currently registered
+         */
+        @UiThread
+        void onListenerCountChanged(int listenerCount);
+    }
+
+    /**
+     * Default {@link KeyExtractor}, keying objects by their {@code @PrimaryKey} field. Objects of
+     * a class without primary key are keyed by their row, which can change when other objects
+     * of their class are deleted.
+     */
+    private final class PrimaryKeyExtractor implements KeyExtractor<P, C> {
+        @Override
+        public long getParentKey(@NonNull P parent) {
+            return RealmObjectKeys.of(parent);
+        }
+
+        @Override
+        public long getChildKey(@NonNull C child) {
+            return RealmObjectKeys.of(child);
+        }
+    }
+
     /**
      * Primary constructor. Sets up parentList {@link #flatItemList} and {@link #flatItemList}.
      *
@@ -80,13 +460,32 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
      *                       adapter is linked to
      */
     public RealmExpandableRecyclerAdapter(@NonNull OrderedRealmCollection<P> parentList) {
+        this(parentList, false);
+    }
+
+    /**
+     * Constructor allowing to choose how the flattened list of parents and children is kept.
+     * <p>
+     * With a virtual flat list, no {@link ExpandableWrapper} is allocated per row and
+     * {@link #flatItemList} stays empty. Rows are computed from the parent list and each
+     * parent's {@link Parent#getChildList()}, using only the expanded state and child count
+     * of every parent.
+     *
+     * @param parentList      List of all parents to be displayed in the RecyclerView that this
+     *                        adapter is linked to
+     * @param virtualFlatList true to resolve rows directly from the Realm collections
+     */
+    public RealmExpandableRecyclerAdapter(@NonNull OrderedRealmCollection<P> parentList, boolean virtualFlatList) {
         if (!parentList.isManaged()) {
             throw new IllegalStateException("Only use this adapter with managed RealmCollection, " +
             "for un-managed lists you can just use the RecyclerView.Adapter");
         }
+        this.virtualFlatList = virtualFlatList;
         this.parentList = parentList;
-        childCollectionListeners = new ArrayList<>(parentList.size());
-        flatItemList = generateFlattenedParentChildList(parentList);
+        flatItemList = virtualFlatList
+                ? Collections.<ExpandableWrapper<P, C>>emptyList()
+                : Collections.unmodifiableList(segmentedFlatList);
+        generateFlattenedParentChildList(parentList);
         parentCollectionListener = createParentCollectionListener();
     }
 
@@ -114,6 +513,7 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
         } else {
             throw new IllegalArgumentException("RealmCollection not supported: " + data.getClass());
         }
+        updateListenerCount(1);
     }
 
     private void removeParentCollectionListener(@NonNull OrderedRealmCollection<P> data) {
@@ -128,116 +528,243 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
         } else {
             throw new IllegalArgumentException("RealmCollection not supported: " + data.getClass());
         }
+        updateListenerCount(-1);
     }
 
     private void addChildCollectionListeners() {
-        for (int i = 0, size = parentList.size(); i < size; i++) {
-            addChildCollectionListener(i);
+        for (int i = 0, size = positionIndex.getParentCount(); i < size; i++) {
+            updateChildCollectionListener(i);
         }
     }
 
-    private void addChildCollectionListener(int parentPosition) {
-        RealmList<C> data = parentList.get(parentPosition).getChildList();
-        OrderedRealmCollectionChangeListener<RealmList<C>> childCollectionListener = createChildCollectionListener(parentPosition);
-        List<RealmObjectChangeListener<C>> childListeners = new ArrayList<>();
-        childCollectionListeners.add(parentPosition, new Triplet<>(data, childCollectionListener, childListeners));
-        data.addChangeListener(childCollectionListener);
-        for (int i = 0, size = data.size(); i < size; i++) {
-            C child = data.get(i);
-            RealmObjectChangeListener<C> childListener = createChildListener(parentPosition, i);
-            RealmObject.addChangeListener(child, childListener);
-            childListeners.add(childListener);
+    /**
+     * Registers or removes the child list listener of a parent, so that only expanded parents
+     * of an attached adapter, within the listener window if one is set, are listened to.
+     */
+    private void updateChildCollectionListener(int parentPosition) {
+        if (shouldListenToChildren(parentPosition)) {
+            if (addChildCollectionListener(parentPosition)) {
+                syncChildCount(parentPosition);
+            }
+        } else {
+            removeChildCollectionListener(parentPosition);
         }
     }
 
-    private void removeChildCollectionListeners() {
-        for (int i = childCollectionListeners.size() - 1; i >= 0; i--) {
-            removeChildCollectionListener(i);
+    private boolean shouldListenToChildren(int parentPosition) {
+        if (recyclerView == null || !positionIndex.isExpanded(parentPosition)) {
+            return false;
+        }
+        return childListenerWindowMargin == NO_CHILD_LISTENER_WINDOW
+                || (parentPosition >= windowFirstParentPosition && parentPosition <= windowLastParentPosition);
+    }
+
+    /**
+     * Registers a single listener on the child list of a parent. Modifications and deletions of
+     * the children are reported through the change set of the list, so no listener is needed
+     * on the children themselves.
+     *
+     * @return true if a listener was registered, false if the parent already had one
+     */
+    private boolean addChildCollectionListener(int parentPosition) {
+        if (childListenerRegistry.get(parentPosition) != null) {
+            return false;
         }
+        RealmList<C> data = parentList.get(parentPosition).getChildList();
+        childListenerRegistry.register(new ChildCollectionListener(data, parentPosition));
+        updateListenerCount(1);
+        return true;
+    }
+
+    private void removeChildCollectionListeners() {
+        int count = childListenerRegistry.size();
+        childListenerRegistry.unregisterAll();
+        updateListenerCount(-count);
     }
 
     private void removeChildCollectionListener(int parentPosition) {
-        childCollectionListeners.remove(parentPosition);
+        if (childListenerRegistry.unregister(parentPosition)) {
+            updateListenerCount(-1);
+        }
+    }
+
+    private void updateListenerCount(int delta) {
+        if (delta == 0) {
+            return;
+        }
+        listenerCount += delta;
+        if (metricsListener != null) {
+            metricsListener.onListenerCountChanged(listenerCount);
+        }
+    }
+
+    /**
+     * Gets the number of Realm change listeners the adapter currently has registered, on the
+     * parent list and on the child lists of the parents it listens to. It drops to 0 once the
+     * adapter is detached from its RecyclerView.
+     *
+     * @return The number of live Realm change listeners
+     */
+    @UiThread
+    public int getRealmListenerCount() {
+        return listenerCount;
     }
 
     private OrderedRealmCollectionChangeListener<OrderedRealmCollection<P>> createParentCollectionListener() {
         return new OrderedRealmCollectionChangeListener<OrderedRealmCollection<P>>() {
             @Override
             public void onChange(OrderedRealmCollection<P> collection, OrderedCollectionChangeSet changeSet) {
-                // null Changes means the async query returns the first time.
-                if (changeSet == null) {
-                    notifyDataSetChanged();
-                    return;
-                }
-
-                // For deletions, the adapter has to be notified in reverse order.
-                OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
-                for (int i = deletions.length - 1; i >= 0; i--) {
-                    OrderedCollectionChangeSet.Range range = deletions[i];
-                    for (int j = range.length - 1; j >= 0; j--) {
-                        int parentPosition = range.startIndex + j;
-                        int flatParentPosition = getFlatParentPosition(parentPosition);
-                        notifyItemRemoved(flatParentPosition);
-                        removeChildCollectionListener(parentPosition);
+                if (collection != parentList) {
+                    // data of a pending update changed while its diff was computed
+                    if (pendingUpdate != null && collection == pendingUpdate.data) {
+                        pendingUpdate.dataChanged = true;
                     }
+                    return;
                 }
 
-                // Insertions need to be notified in reverse order because they are incremental
-                OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
-                for (OrderedCollectionChangeSet.Range range : insertions) {
-                    for (int i = range.length - 1; i >= 0; i--) {
-                        int parentPosition = range.startIndex + i;
-                        int flatParentPosition = getFlatParentPosition(parentPosition);
-                        notifyItemInserted(flatParentPosition);
-                        if (parentList.get(parentPosition).isExpanded()) {
-                            addChildCollectionListener(parentPosition);
-                        }
-                    }
+                // null Changes means the async query returns the first time.
+                if (changeSet == null) {
+                    notifyParentDataSetChanged();
+                    return;
                 }
 
-                OrderedCollectionChangeSet.Range[] modifications = changeSet.getChangeRanges();
-                for (OrderedCollectionChangeSet.Range range : modifications) {
-                    for (int i = 0; i < range.length; i++) {
-                        int parentPosition = range.startIndex + i;
-                        int flatParentPosition = getFlatParentPosition(parentPosition);
-                        notifyItemChanged(flatParentPosition);
-                    }
+                long startNanos = metricsListener != null ? System.nanoTime() : 0;
+                int firstNotification = notificationCount;
+                notifications.beginBatch();
+                try {
+                    applyParentChangeSet(changeSet);
+                } finally {
+                    notifications.endBatch();
                 }
+                reportChangeSetApplied(startNanos, firstNotification);
             }
         };
     }
 
-    private OrderedRealmCollectionChangeListener<RealmList<C>> createChildCollectionListener(final int parentIndex) {
-        return new OrderedRealmCollectionChangeListener<RealmList<C>>() {
-            @Override
-            public void onChange(RealmList<C> collection, OrderedCollectionChangeSet changeSet) {
-                // null Changes means the async query returns the first time.
-                if (changeSet == null) {
-                    notifyDataSetChanged();
-                    return;
-                }
+    /**
+     * Applies the deletion, insertion and modification ranges of a parent change set
+     * to the flattened list.
+     */
+    @UiThread
+    private void applyParentChangeSet(@NonNull OrderedCollectionChangeSet changeSet) {
+        // For deletions, the adapter has to be notified in reverse order.
+        OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            OrderedCollectionChangeSet.Range range = deletions[i];
+            updateListenerCount(-childListenerRegistry.removeParents(range.startIndex, range.length));
+            removeParentRange(range.startIndex, range.length);
+        }
 
-                int flatStartPosition = getFlatParentPosition(parentIndex) + 1;
-                OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
-                for (OrderedCollectionChangeSet.Range range : insertions) {
-                    notifyItemRangeInserted(flatStartPosition + range.startIndex, range.length);
-                }
+        // Insertions are in the coordinates of the new list, so they are applied in order
+        OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
+        for (OrderedCollectionChangeSet.Range range : insertions) {
+            insertParentRange(range.startIndex, range.length);
+            childListenerRegistry.insertParents(range.startIndex, range.length);
+            for (int i = 0; i < range.length; i++) {
+                updateChildCollectionListener(range.startIndex + i);
             }
-        };
+        }
+
+        // Only the parent rows change: child edits reach the rows through the child listeners,
+        // and Realm also reports them here as a modification of the parent.
+        OrderedCollectionChangeSet.Range[] modifications = changeSet.getChangeRanges();
+        for (OrderedCollectionChangeSet.Range range : modifications) {
+            for (int i = 0; i < range.length; i++) {
+                notifications.onChanged(getFlatParentPosition(range.startIndex + i), 1, null);
+            }
+        }
+
+        if (childListenerWindowMargin != NO_CHILD_LISTENER_WINDOW) {
+            // positions shifted, so the window is recomputed against every parent
+            updateChildListenerWindow();
+            addChildCollectionListeners();
+        }
     }
 
-    private RealmObjectChangeListener<C> createChildListener(final int parentIndex, final int childIndex) {
-        return new RealmObjectChangeListener<C>() {
-            @Override
-            public void onChange(C object, ObjectChangeSet changeSet) {
-                int flatPosition = getFlatParentPosition(parentIndex) + childIndex + 1;
-                if (changeSet.isDeleted()) {
-                    notifyItemRemoved(flatPosition);
-                    return;
-                }
-                notifyItemChanged(flatPosition);
+    private void reportChangeSetApplied(long startNanos, int firstNotification) {
+        if (metricsListener != null) {
+            metricsListener.onChangeSetApplied(notificationCount - firstNotification, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Applies the deletion, insertion and modification ranges of the change set of an expanded
+     * parent's child list to its rows, its wrapped children and the position index, notifying
+     * each range once. Realm reports moved children as a deletion and an insertion.
+     */
+    @UiThread
+    private void applyChildChangeSet(int parentIndex, int childCount, @NonNull OrderedCollectionChangeSet changeSet) {
+        int flatStartPosition = getFlatParentPosition(parentIndex) + 1;
+        if (childPageSize != NO_CHILD_PAGING && applyPagedChildChangeSet(parentIndex, childCount, changeSet)) {
+            return;
+        }
+        ExpandableWrapper<P, C> parentWrapper = virtualFlatList ? null : segmentedFlatList.getParentWrapper(parentIndex);
+
+        // For deletions, the adapter has to be notified in reverse order.
+        OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            OrderedCollectionChangeSet.Range range = deletions[i];
+            if (parentWrapper != null) {
+                parentWrapper.removeWrappedChildren(range.startIndex, range.length);
             }
-        };
+            positionIndex.setRowCount(parentIndex, positionIndex.getRowCount(parentIndex) - range.length);
+            notifications.onRemoved(flatStartPosition + range.startIndex, range.length);
+        }
+
+        // Insertions are in the coordinates of the new list, so they are applied in order
+        OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
+        for (OrderedCollectionChangeSet.Range range : insertions) {
+            if (parentWrapper != null) {
+                parentWrapper.insertWrappedChildren(range.startIndex, range.length);
+            }
+            positionIndex.setRowCount(parentIndex, positionIndex.getRowCount(parentIndex) + range.length);
+            notifications.onInserted(flatStartPosition + range.startIndex, range.length);
+        }
+
+        // a modified child may be another object, e.g. after RealmList.set()
+        OrderedCollectionChangeSet.Range[] modifications = changeSet.getChangeRanges();
+        for (OrderedCollectionChangeSet.Range range : modifications) {
+            if (parentWrapper != null) {
+                parentWrapper.refreshWrappedChildren(range.startIndex, range.length);
+            }
+            notifications.onChanged(flatStartPosition + range.startIndex, range.length, null);
+        }
+    }
+
+    /**
+     * Updates the child rows of a parent whose children are paged in, unless all of its children
+     * are displayed before and after the change, in which case the change set applies as is.
+     * Children past the loaded pages have no row, so the displayed block is notified as changed,
+     * plus the rows it gained or lost.
+     *
+     * @return true if the change set was handled
+     */
+    @UiThread
+    private boolean applyPagedChildChangeSet(int parentIndex, int childCount, @NonNull OrderedCollectionChangeSet changeSet) {
+        int oldChildCount = childCount;
+        for (OrderedCollectionChangeSet.Range range : changeSet.getInsertionRanges()) {
+            oldChildCount -= range.length;
+        }
+        for (OrderedCollectionChangeSet.Range range : changeSet.getDeletionRanges()) {
+            oldChildCount += range.length;
+        }
+        int visibleChildCount = positionIndex.getRowCount(parentIndex) - 1;
+        int newVisibleChildCount = getPagedChildCount(childCount, visibleChildCount);
+        if (visibleChildCount == oldChildCount && newVisibleChildCount == childCount) {
+            return false;
+        }
+
+        int flatStartPosition = getFlatParentPosition(parentIndex) + 1;
+        if (!virtualFlatList) {
+            // wrapped again from the current child list once displayed
+            segmentedFlatList.getParentWrapper(parentIndex).releaseWrappedChildList();
+        }
+        positionIndex.setRowCount(parentIndex, newVisibleChildCount + 1);
+        int changedCount = Math.min(visibleChildCount, newVisibleChildCount);
+        notifications.onChanged(flatStartPosition, changedCount, null);
+        notifications.onInserted(flatStartPosition + changedCount, newVisibleChildCount - changedCount);
+        notifications.onRemoved(flatStartPosition + changedCount, visibleChildCount - changedCount);
+        return true;
     }
 
     /**
@@ -279,32 +806,75 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
      * @param flatPosition The index in the merged list of children and parents at which to bind
      */
     @Override
-    @SuppressWarnings("unchecked")
     @UiThread
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int flatPosition) {
-        if (flatPosition > flatItemList.size()) {
-            throw new IllegalStateException("Trying to bind item out of bounds, size " + flatItemList.size()
+        if (flatPosition >= getItemCount()) {
+            throw new IllegalStateException("Trying to bind item out of bounds, size " + getItemCount()
                     + " flatPosition " + flatPosition + ". Was the data changed without a call to notify...()?");
         }
 
-        ExpandableWrapper<P, C> listItem = flatItemList.get(flatPosition);
-        if (listItem.isParent()) {
-            PVH parentViewHolder = (PVH) holder;
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
+        long location = positionIndex.locate(flatPosition);
+        int parentPosition = FlatPositionIndex.parentPositionOf(location);
+        int childPosition = FlatPositionIndex.childPositionOf(location);
+        if (metricsListener != null) {
+            metricsListener.onPositionTranslated(System.nanoTime() - startNanos);
+        }
 
-            if (parentViewHolder.shouldItemViewClickToggleExpansion()) {
-                parentViewHolder.setMainItemClickToExpand();
+        if (virtualFlatList) {
+            P parent = parentList.get(parentPosition);
+            if (childPosition == FlatPositionIndex.NO_POSITION) {
+                bindParentViewHolder(holder, flatPosition, parentPosition, parent, positionIndex.isExpanded(parentPosition));
+            } else {
+                bindChildViewHolder(holder, flatPosition, parentPosition, childPosition, parent.getChildList().get(childPosition));
             }
+        } else {
+            ExpandableWrapper<P, C> parentWrapper = segmentedFlatList.getParentWrapper(parentPosition);
+            if (childPosition == FlatPositionIndex.NO_POSITION) {
+                bindParentViewHolder(holder, flatPosition, parentPosition, parentWrapper.getParent(), parentWrapper.isExpanded());
+            } else {
+                bindChildViewHolder(holder, flatPosition, parentPosition, childPosition, parentWrapper.getWrappedChild(childPosition).getChild());
+            }
+        }
+
+        if (metricsListener != null) {
+            metricsListener.onRowBound(holder.getItemViewType(), System.nanoTime() - startNanos);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bindParentViewHolder(@NonNull RecyclerView.ViewHolder holder, int flatPosition, int parentPosition, P parent, boolean expanded) {
+        PVH parentViewHolder = (PVH) holder;
 
-            parentViewHolder.setExpanded(listItem.isExpanded());
-            parentViewHolder.parent = listItem.getParent();
-            if (RealmObject.isValid(parentViewHolder.parent)) {
-                onBindParentViewHolder(parentViewHolder, getNearestParentPosition(flatPosition), listItem.getParent());
+        if (parentViewHolder.shouldItemViewClickToggleExpansion()) {
+            parentViewHolder.setMainItemClickToExpand();
+        }
+
+        parentViewHolder.setExpanded(expanded);
+        parentViewHolder.parent = parent;
+        if (RealmObject.isValid(parent)) {
+            if (rowProjector != null) {
+                onBindParentViewHolder(parentViewHolder, parentPosition, parent, getParentProjection(flatPosition, parent));
+            } else {
+                onBindParentViewHolder(parentViewHolder, parentPosition, parent);
             }
-        } else {
-            CVH childViewHolder = (CVH) holder;
-            childViewHolder.child = listItem.getChild();
-            if (RealmObject.isValid(childViewHolder.child)) {
-                onBindChildViewHolder(childViewHolder, getNearestParentPosition(flatPosition), getChildPosition(flatPosition), listItem.getChild());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bindChildViewHolder(@NonNull RecyclerView.ViewHolder holder, int flatPosition, int parentPosition, int childPosition, C child) {
+        if (childPageSize != NO_CHILD_PAGING && childPosition == positionIndex.getRowCount(parentPosition) - 2) {
+            // the last loaded child is about to show up, page in the next children
+            postLoadMoreChildren(parentPosition);
+        }
+
+        CVH childViewHolder = (CVH) holder;
+        childViewHolder.child = child;
+        if (RealmObject.isValid(child)) {
+            if (rowProjector != null) {
+                onBindChildViewHolder(childViewHolder, parentPosition, childPosition, child, getChildProjection(flatPosition, child));
+            } else {
+                onBindChildViewHolder(childViewHolder, parentPosition, childPosition, child);
             }
         }
     }
@@ -360,15 +930,117 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
     @UiThread
     public abstract void onBindChildViewHolder(@NonNull CVH childViewHolder, int parentPosition, int childPosition, @NonNull C child);
 
+    /**
+     * Callback called from onBindViewHolder(RecyclerView.ViewHolder, int) instead of
+     * {@link #onBindParentViewHolder(ParentViewHolder, int, Parent)} while a {@link RowProjector}
+     * is set.
+     * <p>
+     * Override it to bind the {@link PVH} from the projection, without reading the fields of
+     * {@code parent}. The default implementation ignores the projection and calls
+     * {@link #onBindParentViewHolder(ParentViewHolder, int, Parent)}.
+     *
+     * @param parentViewHolder The {@code PVH} to bind data to
+     * @param parentPosition The position of the parent to bind
+     * @param parent The parent of the row
+     * @param projection The projection of {@code parent} by the {@link RowProjector}
+     */
+    @UiThread
+    public void onBindParentViewHolder(@NonNull PVH parentViewHolder, int parentPosition, @NonNull P parent, @NonNull Object projection) {
+        onBindParentViewHolder(parentViewHolder, parentPosition, parent);
+    }
+
+    /**
+     * Callback called from onBindViewHolder(RecyclerView.ViewHolder, int) instead of
+     * {@link #onBindChildViewHolder(ChildViewHolder, int, int, Child)} while a {@link RowProjector}
+     * is set.
+     * <p>
+     * Override it to bind the {@link CVH} from the projection, without reading the fields of
+     * {@code child}. The default implementation ignores the projection and calls
+     * {@link #onBindChildViewHolder(ChildViewHolder, int, int, Child)}.
+     *
+     * @param childViewHolder The {@code CVH} to bind data to
+     * @param parentPosition The position of the parent that contains the child to bind
+     * @param childPosition The position of the child to bind
+     * @param child The child of the row
+     * @param projection The projection of {@code child} by the {@link RowProjector}
+     */
+    @UiThread
+    public void onBindChildViewHolder(@NonNull CVH childViewHolder, int parentPosition, int childPosition, @NonNull C child, @NonNull Object projection) {
+        onBindChildViewHolder(childViewHolder, parentPosition, childPosition, child);
+    }
+
+    @NonNull
+    private Object getParentProjection(int flatPosition, @NonNull P parent) {
+        Object projection = rowProjectionCache.get(flatPosition);
+        if (projection == null) {
+            projection = rowProjector.projectParent(parent);
+            rowProjectionCache.put(flatPosition, projection);
+        }
+        return projection;
+    }
+
+    @NonNull
+    private Object getChildProjection(int flatPosition, @NonNull C child) {
+        Object projection = rowProjectionCache.get(flatPosition);
+        if (projection == null) {
+            projection = rowProjector.projectChild(child);
+            rowProjectionCache.put(flatPosition, projection);
+        }
+        return projection;
+    }
+
     /**
      * Gets the number of parents and children currently expanded.
      *
-     * @return The size of {@link #flatItemList}
+     * @return The number of rows in the flattened list
      */
     @Override
     @UiThread
     public int getItemCount() {
-        return flatItemList.size();
+        return positionIndex.getFlatItemCount();
+    }
+
+    /**
+     * Returns a stable id for the row at {@code flatPosition}, derived from the keys of the
+     * {@link KeyExtractor}. Only used once stable ids are enabled through
+     * {@link #setHasStableIds(boolean)}.
+     * <p>
+     * The id of a child row mixes the key of its parent with its own, so a child listed under
+     * several parents gets a different id under each of them.
+     *
+     * @param flatPosition The index in the merged list of children and parents
+     * @return the id of the row, or {@link RecyclerView#NO_ID} if its object was deleted
+     */
+    @Override
+    @UiThread
+    public long getItemId(int flatPosition) {
+        long location = positionIndex.locate(flatPosition);
+        int parentPosition = FlatPositionIndex.parentPositionOf(location);
+        int childPosition = FlatPositionIndex.childPositionOf(location);
+        P parent;
+        C child = null;
+        if (virtualFlatList) {
+            parent = parentList.get(parentPosition);
+            if (childPosition != FlatPositionIndex.NO_POSITION && RealmObject.isValid(parent)) {
+                child = parent.getChildList().get(childPosition);
+            }
+        } else {
+            ExpandableWrapper<P, C> parentWrapper = segmentedFlatList.getParentWrapper(parentPosition);
+            parent = parentWrapper.getParent();
+            if (childPosition != FlatPositionIndex.NO_POSITION) {
+                child = parentWrapper.getWrappedChild(childPosition).getChild();
+            }
+        }
+
+        long parentKey = getParentKey(parent);
+        if (parentKey == RealmObjectKeys.NO_KEY) {
+            return RecyclerView.NO_ID;
+        }
+        if (childPosition == FlatPositionIndex.NO_POSITION) {
+            return RealmObjectKeys.rowId(parentKey, RealmObjectKeys.NO_KEY);
+        }
+        long childKey = getChildKey(child);
+        return childKey == RealmObjectKeys.NO_KEY ? RecyclerView.NO_ID : RealmObjectKeys.rowId(parentKey, childKey);
     }
 
     /**
@@ -382,11 +1054,29 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
     @Override
     @UiThread
     public int getItemViewType(int flatPosition) {
-        ExpandableWrapper<P, C> listItem = flatItemList.get(flatPosition);
-        if (listItem.isParent()) {
-            return getParentViewType(getNearestParentPosition(flatPosition));
+        if (viewTypeCache != null) {
+            int viewType = viewTypeCache.get(flatPosition);
+            if (viewType == ViewTypeCache.UNKNOWN) {
+                viewType = resolveItemViewType(flatPosition);
+                viewTypeCache.set(flatPosition, viewType);
+            }
+            return viewType;
+        }
+        return resolveItemViewType(flatPosition);
+    }
+
+    private int resolveItemViewType(int flatPosition) {
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
+        long location = positionIndex.locate(flatPosition);
+        int parentPosition = FlatPositionIndex.parentPositionOf(location);
+        int childPosition = FlatPositionIndex.childPositionOf(location);
+        if (metricsListener != null) {
+            metricsListener.onPositionTranslated(System.nanoTime() - startNanos);
+        }
+        if (childPosition == FlatPositionIndex.NO_POSITION) {
+            return getParentViewType(parentPosition);
         } else {
-            return getChildViewType(getNearestParentPosition(flatPosition), getChildPosition(flatPosition));
+            return getChildViewType(parentPosition, childPosition);
         }
     }
 
@@ -451,22 +1141,206 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
     }
 
     /**
-     * Set a new list of parents and notify any registered observers that the data set has changed.
+     * Set a new list of parents and notify any registered observers of the rows that changed.
      * <p>
-     * This setter does not specify what about the data set has changed, forcing
-     * any observers to assume that all existing items and structure may no longer be valid.
-     * LayoutManagers will be forced to fully rebind and relayout all visible views.</p>
+     * While the adapter is attached, the rows of the new list are diffed against the displayed
+     * ones, parents and children being matched by their primary key, or their row when their
+     * class has none. Only the inserted and removed row ranges are notified, so rows present
+     * in both lists keep their views. A row that moved is removed and inserted again.
+     * <p>
+     * For large lists the diff is computed on a background thread, and {@link #getData()}
+     * keeps returning the previous list until it is dispatched. If the displayed rows or the
+     * new list change in the meantime, the diff is dropped and observers are notified that
+     * the whole data set changed, as they are when the diff is disabled through
+     * {@link #setDiffOnUpdateData(boolean)}.
      */
     @UiThread
     public void updateData(@NonNull OrderedRealmCollection<P> data) {
-        if (isDataValid()) {
-            removeChildCollectionListeners();
+        cancelPendingUpdate();
+        if (!diffOnUpdate || recyclerView == null || !isDataValid() || !data.isValid() || !data.isLoaded()) {
+            swapParentList(data);
+            notifyParentDataSetChanged();
+            return;
+        }
+
+        final FlatListSnapshot oldRows = snapshotFlatList();
+        final FlatListSnapshot newRows = snapshotParentList(data);
+        final PendingUpdate update = new PendingUpdate(data, structureVersion, newRows.size());
+        pendingUpdate = update;
+        if (oldRows.size() + newRows.size() < BACKGROUND_DIFF_THRESHOLD) {
+            completeUpdate(update, DiffUtil.calculateDiff(FlatListSnapshot.diffCallback(oldRows, newRows), false));
+            return;
+        }
+
+        // listen to the new data right away to find out if it changes before the diff is done
+        addParentCollectionListener(data);
+        update.listening = true;
+        getDiffExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(FlatListSnapshot.diffCallback(oldRows, newRows), false);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        completeUpdate(update, diffResult);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Enables or disables diffing the displayed rows against the new data in
+     * {@link #updateData(OrderedRealmCollection)}. Enabled by default.
+     *
+     * @param diffOnUpdate false to notify that the whole data set changed on every update
+     */
+    @UiThread
+    public void setDiffOnUpdateData(boolean diffOnUpdate) {
+        this.diffOnUpdate = diffOnUpdate;
+    }
+
+    /**
+     * Displays the data of a pending update, notifying the rows of {@code diffResult} if they
+     * still describe the change, or the whole data set otherwise.
+     *
+     * @param diffResult the diff of the displayed rows against the new data, or {@code null}
+     *                   to notify the whole data set
+     */
+    @UiThread
+    private void completeUpdate(@NonNull PendingUpdate update, @Nullable DiffUtil.DiffResult diffResult) {
+        if (update != pendingUpdate) {
+            // superseded by another update
+            return;
+        }
+        pendingUpdate = null;
+        if (update.listening && update.data.isValid()) {
+            removeParentCollectionListener(update.data);
+        }
+
+        boolean upToDate = diffResult != null && !update.dataChanged && update.structureVersion == structureVersion;
+        swapParentList(update.data);
+        if (!upToDate || !isDataValid()) {
+            notifyParentDataSetChanged();
+            return;
+        }
+
+        regenerateFlattenedParentChildList();
+        if (getItemCount() != update.rowCount) {
+            dispatchDataSetChanged();
+            return;
+        }
+        notifications.beginBatch();
+        try {
+            diffResult.dispatchUpdatesTo(notifications);
+        } finally {
+            notifications.endBatch();
+        }
+    }
+
+    private void cancelPendingUpdate() {
+        PendingUpdate update = pendingUpdate;
+        pendingUpdate = null;
+        if (update != null && update.listening && update.data.isValid()) {
+            removeParentCollectionListener(update.data);
+        }
+    }
+
+    /**
+     * Moves the listeners of the adapter over to {@code data} and makes it the parent list.
+     * The flattened list is left as is.
+     */
+    private void swapParentList(@NonNull OrderedRealmCollection<P> data) {
+        removeChildCollectionListeners();
+        if (isDataValid() && recyclerView != null) {
             removeParentCollectionListener(parentList);
             addParentCollectionListener(data);
-            addChildCollectionListeners();
         }
         parentList = data;
-        notifyParentDataSetChanged();
+    }
+
+    /**
+     * Captures the keys of the displayed rows.
+     */
+    @NonNull
+    private FlatListSnapshot snapshotFlatList() {
+        FlatListSnapshot snapshot = new FlatListSnapshot(getItemCount());
+        for (int i = 0, parentCount = positionIndex.getParentCount(); i < parentCount; i++) {
+            int childCount = positionIndex.getRowCount(i) - 1;
+            ExpandableWrapper<P, C> parentWrapper = virtualFlatList ? null : segmentedFlatList.getParentWrapper(i);
+            P parent = virtualFlatList ? parentList.get(i) : parentWrapper.getParent();
+            long parentKey = getParentKey(parent);
+            snapshot.addParent(parentKey, positionIndex.isExpanded(i));
+
+            RealmList<C> childList = virtualFlatList && parentKey != RealmObjectKeys.NO_KEY ? parent.getChildList() : null;
+            for (int j = 0; j < childCount; j++) {
+                C child;
+                if (virtualFlatList) {
+                    child = childList != null && j < childList.size() ? childList.get(j) : null;
+                } else {
+                    child = parentWrapper.getWrappedChild(j).getChild();
+                }
+                snapshot.addChild(parentKey, getChildKey(child));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Captures the keys of the rows {@code data} flattens to, the same way
+     * {@link #generateFlattenedParentChildList(OrderedRealmCollection)} flattens it.
+     */
+    @NonNull
+    private FlatListSnapshot snapshotParentList(@NonNull OrderedRealmCollection<P> data) {
+        FlatListSnapshot snapshot = new FlatListSnapshot(data.size());
+        for (int i = 0, parentCount = data.size(); i < parentCount; i++) {
+            P parent = data.get(i);
+            long parentKey = getParentKey(parent);
+            boolean expanded = isInitiallyExpanded(parent, parentKey);
+            snapshot.addParent(parentKey, expanded);
+            if (!expanded) {
+                continue;
+            }
+            RealmList<C> childList = parent.getChildList();
+            for (int j = 0, childCount = getPagedChildCount(childList.size(), 0); j < childCount; j++) {
+                snapshot.addChild(parentKey, getChildKey(childList.get(j)));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Sets the {@link KeyExtractor} identifying parents and children. Defaults to their
+     * {@code @PrimaryKey} field.
+     * <p>
+     * Observers are not notified, so the extractor should be set before the adapter is
+     * attached to a RecyclerView.
+     */
+    @UiThread
+    public void setKeyExtractor(@NonNull KeyExtractor<? super P, ? super C> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * @return the key of {@code parent}, or {@link RealmObjectKeys#NO_KEY} if it was deleted
+     */
+    private long getParentKey(@Nullable P parent) {
+        return parent != null && RealmObject.isValid(parent) ? keyExtractor.getParentKey(parent) : RealmObjectKeys.NO_KEY;
+    }
+
+    /**
+     * @return the key of {@code child}, or {@link RealmObjectKeys#NO_KEY} if it was deleted
+     */
+    private long getChildKey(@Nullable C child) {
+        return child != null && RealmObject.isValid(child) ? keyExtractor.getChildKey(child) : RealmObjectKeys.NO_KEY;
+    }
+
+    @NonNull
+    private static synchronized Executor getDiffExecutor() {
+        if (diffExecutor == null) {
+            diffExecutor = Executors.newSingleThreadExecutor();
+        }
+        return diffExecutor;
     }
 
     private boolean isDataValid() {
@@ -484,8 +1358,12 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
     @Override
     @UiThread
     public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        recyclerView.addOnScrollListener(childListenerWindowScrollListener);
+        recyclerView.addOnScrollListener(rowProjectionPrefetchScrollListener);
         if (isDataValid()) {
             addParentCollectionListener(parentList);
+            updateChildListenerWindow();
             addChildCollectionListeners();
         }
     }
@@ -502,10 +1380,179 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
     @Override
     @UiThread
     public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        if (pendingUpdate != null) {
+            // nothing will be displayed anymore, so the pending diff isn't worth waiting for
+            completeUpdate(pendingUpdate, null);
+        }
+        if (expansionStateStore != null) {
+            expansionStateStore.flush();
+        }
+        // the child lists can outlive an invalidated parent list, so their listeners always go
+        removeChildCollectionListeners();
         if (isDataValid()) {
-            removeChildCollectionListeners();
             removeParentCollectionListener(parentList);
         }
+        recyclerView.removeOnScrollListener(childListenerWindowScrollListener);
+        recyclerView.removeOnScrollListener(rowProjectionPrefetchScrollListener);
+        this.recyclerView = null;
+    }
+
+    /**
+     * Limits the Realm listeners on child lists to the expanded parents that have rows within
+     * {@code margin} rows of the rows currently shown by the RecyclerView. Listeners of parents
+     * scrolling further away are removed, and registered again once the parent comes back
+     * within the window.
+     * <p>
+     * The window is only computed for a {@link LinearLayoutManager} (or subclass), any other
+     * layout manager keeps listening to every expanded parent.
+     *
+     * @param margin number of rows to keep listening to around the visible rows,
+     *               or a negative value to listen to every expanded parent (default)
+     */
+    @UiThread
+    public void setChildListenerWindow(int margin) {
+        childListenerWindowMargin = margin < 0 ? NO_CHILD_LISTENER_WINDOW : margin;
+        updateChildListenerWindow();
+        addChildCollectionListeners();
+    }
+
+    private final RecyclerView.OnScrollListener childListenerWindowScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            if (childListenerWindowMargin == NO_CHILD_LISTENER_WINDOW || windowUpdatePending) {
+                return;
+            }
+            // the adapter can't be notified while the RecyclerView is scrolling
+            windowUpdatePending = true;
+            recyclerView.post(childListenerWindowUpdate);
+        }
+    };
+
+    private final Runnable childListenerWindowUpdate = new Runnable() {
+        @Override
+        public void run() {
+            windowUpdatePending = false;
+            if (recyclerView == null || childListenerWindowMargin == NO_CHILD_LISTENER_WINDOW) {
+                return;
+            }
+            int oldFirstParentPosition = windowFirstParentPosition;
+            int oldLastParentPosition = windowLastParentPosition;
+            updateChildListenerWindow();
+
+            // only parents entering or leaving the window need their listener updated
+            int parentCount = positionIndex.getParentCount();
+            for (int i = oldFirstParentPosition; i <= oldLastParentPosition && i < parentCount; i++) {
+                if (i < windowFirstParentPosition || i > windowLastParentPosition) {
+                    removeChildCollectionListener(i);
+                }
+            }
+            for (int i = windowFirstParentPosition; i <= windowLastParentPosition; i++) {
+                if (i < oldFirstParentPosition || i > oldLastParentPosition) {
+                    updateChildCollectionListener(i);
+                }
+            }
+        }
+    };
+
+    /**
+     * Computes the range of parents within the listener window from the visible rows.
+     */
+    private void updateChildListenerWindow() {
+        int parentCount = positionIndex.getParentCount();
+        windowFirstParentPosition = 0;
+        windowLastParentPosition = parentCount - 1;
+        if (recyclerView == null || childListenerWindowMargin == NO_CHILD_LISTENER_WINDOW || parentCount == 0) {
+            return;
+        }
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (!(layoutManager instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+        int firstVisiblePosition = Math.max(linearLayoutManager.findFirstVisibleItemPosition(), 0);
+        int lastVisiblePosition = Math.max(linearLayoutManager.findLastVisibleItemPosition(), firstVisiblePosition);
+        int firstFlatPosition = Math.max(firstVisiblePosition - childListenerWindowMargin, 0);
+        int lastFlatPosition = Math.min(lastVisiblePosition + childListenerWindowMargin, getItemCount() - 1);
+        windowFirstParentPosition = positionIndex.getNearestParentPosition(firstFlatPosition);
+        windowLastParentPosition = Math.min(positionIndex.getNearestParentPosition(lastFlatPosition), parentCount - 1);
+    }
+
+    /**
+     * Brings the child rows of an expanded parent back in line with its child list, which may
+     * have changed while nobody was listening to it. Only the child count is compared.
+     */
+    @UiThread
+    private void syncChildCount(int parentPosition) {
+        int visibleChildCount = positionIndex.getRowCount(parentPosition) - 1;
+        int childCount = getPagedChildCount(parentList.get(parentPosition).getChildList().size(), visibleChildCount);
+        if (childCount == visibleChildCount) {
+            return;
+        }
+
+        int flatParentPosition = getFlatParentPosition(parentPosition);
+        if (!virtualFlatList) {
+            // wrapped again from the current child list on the next access
+            segmentedFlatList.getParentWrapper(parentPosition).releaseWrappedChildList();
+        }
+        positionIndex.setRowCount(parentPosition, childCount + 1);
+        notifications.beginBatch();
+        notifications.onRemoved(flatParentPosition + 1, visibleChildCount);
+        notifications.onInserted(flatParentPosition + 1, childCount);
+        notifications.endBatch();
+    }
+
+    /**
+     * Sets a store writing the expanded state of parents back to Realm whenever they are
+     * expanded or collapsed, by a click or a bulk operation. Parents whose state hasn't been
+     * written yet get their initial state from the store instead of {@link Parent#isExpanded()}.
+     * <p>
+     * Queued states are flushed when the adapter is detached from its RecyclerView.
+     *
+     * @param expansionStateStore the store, or {@code null} to keep the expanded state in memory only
+     */
+    @UiThread
+    public void setExpansionStateStore(@Nullable ExpansionStateStore<P> expansionStateStore) {
+        this.expansionStateStore = expansionStateStore;
+    }
+
+    /**
+     * @return the state of {@code parent} when its rows are first generated
+     */
+    private boolean isInitiallyExpanded(@NonNull P parent) {
+        return expansionStateStore != null ? expansionStateStore.isExpanded(parent) : parent.isExpanded();
+    }
+
+    /**
+     * Same as {@link #isInitiallyExpanded(Parent)}, reusing the key of {@code parent} if the
+     * store keys parents the same way.
+     */
+    private boolean isInitiallyExpanded(@NonNull P parent, long parentKey) {
+        if (expansionStateStore == null) {
+            return parent.isExpanded();
+        }
+        return keyExtractor == primaryKeyExtractor
+                ? expansionStateStore.isExpanded(parent, parentKey)
+                : expansionStateStore.isExpanded(parent);
+    }
+
+    private void storeExpandedState(int parentPosition, boolean expanded) {
+        if (expansionStateStore == null) {
+            return;
+        }
+        queueExpandedState(parentPosition, expanded);
+        expansionStateStore.scheduleFlush();
+    }
+
+    /**
+     * Queues the state of a parent in the store without scheduling its write, so bulk
+     * operations schedule a single write for all their parents.
+     */
+    private void queueExpandedState(int parentPosition, boolean expanded) {
+        if (expansionStateStore == null) {
+            return;
+        }
+        P parent = virtualFlatList ? parentList.get(parentPosition) : segmentedFlatList.getParentWrapper(parentPosition).getParent();
+        expansionStateStore.queueExpanded(parent, expanded);
     }
 
     @UiThread
@@ -513,6 +1560,26 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
         this.expandCollapseListener = expandCollapseListener;
     }
 
+    /**
+     * Sets a listener receiving the timings and counters of the adapter. The current number of
+     * Realm change listeners is reported right away.
+     *
+     * @param metricsListener the listener, or {@code null} to stop timing and counting (default)
+     */
+    @UiThread
+    public void setMetricsListener(@Nullable MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+        if (metricsListener != null) {
+            metricsListener.onListenerCountChanged(listenerCount);
+        }
+    }
+
+    private void reportExpansionChanged(int parentCount, boolean expanded, long startNanos) {
+        if (metricsListener != null) {
+            metricsListener.onExpansionChanged(parentCount, expanded, System.nanoTime() - startNanos);
+        }
+    }
+
     /**
      * Called when a ParentViewHolder has triggered an expansion for it's parent
      *
@@ -520,7 +1587,11 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
      */
     @UiThread
     protected void parentExpandedFromViewHolder(int flatParentPosition) {
-        ExpandableWrapper<P, C> parentWrapper = flatItemList.get(flatParentPosition);
+        if (virtualFlatList) {
+            updateExpandedVirtualParent(flatParentPosition, true);
+            return;
+        }
+        ExpandableWrapper<P, C> parentWrapper = segmentedFlatList.getParentWrapper(getNearestParentPosition(flatParentPosition));
         updateExpandedParent(parentWrapper, flatParentPosition, true);
     }
 
@@ -531,7 +1602,11 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
      */
     @UiThread
     protected void parentCollapsedFromViewHolder(int flatParentPosition) {
-        ExpandableWrapper<P, C> parentWrapper = flatItemList.get(flatParentPosition);
+        if (virtualFlatList) {
+            updateCollapsedVirtualParent(flatParentPosition, true);
+            return;
+        }
+        ExpandableWrapper<P, C> parentWrapper = segmentedFlatList.getParentWrapper(getNearestParentPosition(flatParentPosition));
         updateCollapsedParent(parentWrapper, flatParentPosition, true);
     }
 
@@ -580,25 +1655,23 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
             return;
         }
 
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
         parentWrapper.setExpanded(true);
 
-        List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-        if (wrappedChildList != null) {
-            int childCount = wrappedChildList.size();
-            for (int i = 0; i < childCount; i++) {
-                flatItemList.add(flatParentPosition + i + 1, wrappedChildList.get(i));
-            }
-
-            notifyItemRangeInserted(flatParentPosition + 1, childCount);
-        }
+        // the index is kept in sync with the change sets, so it resolves the parent in O(log n)
+        int parentPosition = positionIndex.getNearestParentPosition(flatParentPosition);
+        // the children become visible through the wrapper, no row is moved
+        int childCount = getPagedChildCount(parentWrapper.getParent().getChildList().size(), 0);
+        positionIndex.setExpanded(parentPosition, true, childCount + 1);
+        notifications.onInserted(flatParentPosition + 1, childCount);
+        storeExpandedState(parentPosition, true);
 
         // add realm change listener to children
-        P parent = parentWrapper.getParent();
-        int parentPosition = parentList.indexOf(parent);
-        addChildCollectionListener(parentPosition);
+        updateChildCollectionListener(parentPosition);
+        reportExpansionChanged(1, true, startNanos);
 
         if (expansionTriggeredByListItemClick && expandCollapseListener != null) {
-            expandCollapseListener.onParentExpanded(getNearestParentPosition(flatParentPosition));
+            expandCollapseListener.onParentExpanded(parentPosition);
         }
     }
 
@@ -618,26 +1691,561 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
             return;
         }
 
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
         parentWrapper.setExpanded(false);
 
         // remove realm change listener from children
-        P parent = parentWrapper.getParent();
-        int parentPosition = parentList.indexOf(parent);
+        int parentPosition = positionIndex.getNearestParentPosition(flatParentPosition);
         removeChildCollectionListener(parentPosition);
 
-        List<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-        if (wrappedChildList != null) {
-            int childCount = wrappedChildList.size();
-            for (int i = childCount - 1; i >= 0; i--) {
-                flatItemList.remove(flatParentPosition + i + 1);
-            }
+        int childCount = positionIndex.getRowCount(parentPosition) - 1;
+        positionIndex.setExpanded(parentPosition, false, 1);
+        parentWrapper.releaseWrappedChildList();
+        notifications.onRemoved(flatParentPosition + 1, childCount);
+        storeExpandedState(parentPosition, false);
+        reportExpansionChanged(1, false, startNanos);
+
+        if (collapseTriggeredByListItemClick && expandCollapseListener != null) {
+            expandCollapseListener.onParentCollapsed(parentPosition);
+        }
+    }
+
+    /**
+     * Expands a specified parent of a virtual flat list. Calls through to the
+     * ExpandCollapseListener and adds the row count of the parent's children to the index.
+     *
+     * @param flatParentPosition The index of the parent to expand
+     * @param expansionTriggeredByListItemClick true if expansion was triggered
+     *                                          by a click event, false otherwise.
+     */
+    @UiThread
+    private void updateExpandedVirtualParent(int flatParentPosition, boolean expansionTriggeredByListItemClick) {
+        int parentPosition = positionIndex.getNearestParentPosition(flatParentPosition);
+        if (positionIndex.isExpanded(parentPosition)) {
+            return;
+        }
+
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
+        int childCount = getPagedChildCount(parentList.get(parentPosition).getChildList().size(), 0);
+        positionIndex.setExpanded(parentPosition, true, childCount + 1);
+        notifications.onInserted(flatParentPosition + 1, childCount);
+        storeExpandedState(parentPosition, true);
 
-            notifyItemRangeRemoved(flatParentPosition + 1, childCount);
+        updateChildCollectionListener(parentPosition);
+        reportExpansionChanged(1, true, startNanos);
+
+        if (expansionTriggeredByListItemClick && expandCollapseListener != null) {
+            expandCollapseListener.onParentExpanded(parentPosition);
+        }
+    }
+
+    /**
+     * Collapses a specified parent of a virtual flat list. Calls through to the
+     * ExpandCollapseListener and removes the row count of the parent's children from the index.
+     *
+     * @param flatParentPosition The index of the parent to collapse
+     * @param collapseTriggeredByListItemClick true if expansion was triggered
+     *                                         by a click event, false otherwise.
+     */
+    @UiThread
+    private void updateCollapsedVirtualParent(int flatParentPosition, boolean collapseTriggeredByListItemClick) {
+        int parentPosition = positionIndex.getNearestParentPosition(flatParentPosition);
+        if (!positionIndex.isExpanded(parentPosition)) {
+            return;
         }
 
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
+        removeChildCollectionListener(parentPosition);
+
+        int childCount = positionIndex.getRowCount(parentPosition) - 1;
+        positionIndex.setExpanded(parentPosition, false, 1);
+        notifications.onRemoved(flatParentPosition + 1, childCount);
+        storeExpandedState(parentPosition, false);
+        reportExpansionChanged(1, false, startNanos);
+
         if (collapseTriggeredByListItemClick && expandCollapseListener != null) {
-            expandCollapseListener.onParentCollapsed(getNearestParentPosition(flatParentPosition));
+            expandCollapseListener.onParentCollapsed(parentPosition);
+        }
+    }
+
+    /**
+     * Caches the view type of every row in a primitive array, so
+     * {@link #getItemViewType(int)} only calls {@link #getParentViewType(int)} or
+     * {@link #getChildViewType(int, int)}, which often read Realm objects, once per row.
+     * <p>
+     * Cached view types follow the rows as they are inserted, removed and moved, and are
+     * forgotten for the rows a change set reports as changed, or for every row once the whole
+     * data set changed. A view type depending on anything else, e.g. a parent whose view type
+     * depends on its children, should be refreshed through {@link #invalidateViewTypeCache()}.
+     *
+     * @param enabled true to cache the view types, false to compute them on every call (default)
+     */
+    @UiThread
+    public void setViewTypeCacheEnabled(boolean enabled) {
+        if (!enabled) {
+            viewTypeCache = null;
+        } else if (viewTypeCache == null) {
+            viewTypeCache = new ViewTypeCache();
+            viewTypeCache.reset(getItemCount());
+        }
+    }
+
+    /**
+     * Forgets the cached view type of every row, e.g. after notifying rows directly through
+     * {@code notifyItemChanged(int)}, which doesn't go through the cache.
+     */
+    @UiThread
+    public void invalidateViewTypeCache() {
+        if (viewTypeCache != null) {
+            viewTypeCache.reset(getItemCount());
+        }
+    }
+
+    /**
+     * Binds rows from projections of their parent or child rather than from the Realm objects:
+     * while a {@link RowProjector} is set, the projections of the {@code cacheSize} most recently
+     * bound rows are cached and passed to
+     * {@link #onBindParentViewHolder(ParentViewHolder, int, Parent, Object)} and
+     * {@link #onBindChildViewHolder(ChildViewHolder, int, int, Child, Object)}, so rows bound
+     * again while scrolling back and forth don't read their Realm objects again.
+     * <p>
+     * Cached projections follow the rows as they are inserted, removed and moved, and are
+     * forgotten for the rows a change set reports as changed, or for every row once the whole
+     * data set changed. A projection depending on anything else should be refreshed through
+     * {@link #invalidateRowProjections()}.
+     *
+     * @param rowProjector the projector of the rows, or {@code null} to bind rows from the
+     *                     Realm objects only (default)
+     * @param cacheSize    the maximum number of cached projections, which should exceed the number
+     *                     of rows displayed at once
+     * @throws IllegalArgumentException if a projector is set and {@code cacheSize} isn't positive
+     */
+    @UiThread
+    public void setRowProjector(@Nullable RowProjector<? super P, ? super C> rowProjector, int cacheSize) {
+        rowProjectionCache = rowProjector != null ? new RowProjectionCache(cacheSize) : null;
+        this.rowProjector = rowProjector;
+    }
+
+    /**
+     * Computes the projections of the next {@code rowCount} rows in the scrolling direction once
+     * the RecyclerView scrolled, so they are cached by the time these rows are bound. Prefetched
+     * rows never evict the projections of the rows currently shown: those are marked as used
+     * first, and no more rows are prefetched than the cache holds besides them.
+     * <p>
+     * Rows are only prefetched for a {@link LinearLayoutManager} (or subclass), while a
+     * {@link RowProjector} is set.
+     *
+     * @param rowCount number of rows to prefetch, or 0 not to prefetch any (default)
+     */
+    @UiThread
+    public void setRowProjectionPrefetch(int rowCount) {
+        rowProjectionPrefetch = Math.max(rowCount, 0);
+    }
+
+    /**
+     * Forgets every cached row projection, e.g. after notifying rows directly through
+     * {@code notifyItemChanged(int)}, which doesn't go through the cache.
+     */
+    @UiThread
+    public void invalidateRowProjections() {
+        if (rowProjectionCache != null) {
+            rowProjectionCache.clear();
+        }
+    }
+
+    private final RecyclerView.OnScrollListener rowProjectionPrefetchScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            if (rowProjectionCache == null || rowProjectionPrefetch == 0 || prefetchPending) {
+                return;
+            }
+            // projected between frames rather than while the RecyclerView lays out its rows
+            prefetchPending = true;
+            recyclerView.post(rowProjectionPrefetchTask);
+        }
+    };
+
+    private final Runnable rowProjectionPrefetchTask = new Runnable() {
+        @Override
+        public void run() {
+            prefetchPending = false;
+            if (recyclerView == null || rowProjectionCache == null || rowProjectionPrefetch == 0) {
+                return;
+            }
+            RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+            if (!(layoutManager instanceof LinearLayoutManager)) {
+                return;
+            }
+            LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+            int firstVisiblePosition = linearLayoutManager.findFirstVisibleItemPosition();
+            int lastVisiblePosition = linearLayoutManager.findLastVisibleItemPosition();
+            if (firstVisiblePosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            // the direction is taken from the positions, so reversed layouts prefetch the right rows
+            int oldFirstVisiblePosition = prefetchFirstVisiblePosition;
+            prefetchFirstVisiblePosition = firstVisiblePosition;
+            int visibleRowCount = lastVisiblePosition - firstVisiblePosition + 1;
+            int rowCount = Math.min(rowProjectionPrefetch, rowProjectionCache.getMaxSize() - visibleRowCount);
+            // the shown rows may have been bound before the rows evicted otherwise
+            rowProjectionCache.markUsed(firstVisiblePosition, visibleRowCount);
+            if (firstVisiblePosition > oldFirstVisiblePosition) {
+                for (int i = lastVisiblePosition + 1, end = Math.min(lastVisiblePosition + rowCount, getItemCount() - 1); i <= end; i++) {
+                    prefetchRowProjection(i);
+                }
+            } else if (firstVisiblePosition < oldFirstVisiblePosition) {
+                for (int i = firstVisiblePosition - 1, end = Math.max(firstVisiblePosition - rowCount, 0); i >= end; i--) {
+                    prefetchRowProjection(i);
+                }
+            }
+        }
+    };
+
+    /**
+     * Caches the projection of the row at {@code flatPosition}, unless it is already cached.
+     */
+    private void prefetchRowProjection(int flatPosition) {
+        if (rowProjectionCache.contains(flatPosition)) {
+            return;
+        }
+        long location = positionIndex.locate(flatPosition);
+        int parentPosition = FlatPositionIndex.parentPositionOf(location);
+        int childPosition = FlatPositionIndex.childPositionOf(location);
+        P parent;
+        C child = null;
+        if (virtualFlatList) {
+            parent = parentList.get(parentPosition);
+            if (childPosition != FlatPositionIndex.NO_POSITION && RealmObject.isValid(parent)) {
+                child = parent.getChildList().get(childPosition);
+            }
+        } else {
+            ExpandableWrapper<P, C> parentWrapper = segmentedFlatList.getParentWrapper(parentPosition);
+            parent = parentWrapper.getParent();
+            if (childPosition != FlatPositionIndex.NO_POSITION) {
+                child = parentWrapper.getWrappedChild(childPosition).getChild();
+            }
+        }
+
+        if (childPosition == FlatPositionIndex.NO_POSITION) {
+            if (RealmObject.isValid(parent)) {
+                rowProjectionCache.put(flatPosition, rowProjector.projectParent(parent));
+            }
+        } else if (child != null && RealmObject.isValid(child)) {
+            rowProjectionCache.put(flatPosition, rowProjector.projectChild(child));
+        }
+    }
+
+    /**
+     * Pages in the children of expanded parents: a parent shows its first {@code pageSize}
+     * children when expanded, and the next {@code pageSize} ones each time its last loaded child
+     * is bound, or when {@link #loadMoreChildren(int)} is called. Only the loaded children get
+     * a row, and in the default mode a wrapper, so expanding a parent with a very large child
+     * list costs the same as expanding one with {@code pageSize} children.
+     * <p>
+     * Parents keep the pages they loaded until they are collapsed. The page size applies to
+     * parents expanded afterwards, so it should be set before the adapter is attached.
+     *
+     * @param pageSize number of children per page, or 0 to display every child (default)
+     */
+    @UiThread
+    public void setChildPageSize(int pageSize) {
+        childPageSize = Math.max(pageSize, NO_CHILD_PAGING);
+    }
+
+    /**
+     * @param parentPosition index relative to the parent list
+     * @return true if the parent is expanded and has children that aren't loaded yet
+     */
+    @UiThread
+    public boolean hasMoreChildren(int parentPosition) {
+        return positionIndex.isExpanded(parentPosition)
+                && positionIndex.getRowCount(parentPosition) - 1 < getChildList(parentPosition).size();
+    }
+
+    /**
+     * Loads the next page of children of an expanded parent, e.g. from a "load more" button
+     * bound in its last loaded child. Does nothing if children aren't paged in or are all loaded.
+     *
+     * @param parentPosition index relative to the parent list
+     */
+    @UiThread
+    public void loadMoreChildren(int parentPosition) {
+        if (childPageSize == NO_CHILD_PAGING || !positionIndex.isExpanded(parentPosition)) {
+            return;
+        }
+        int visibleChildCount = positionIndex.getRowCount(parentPosition) - 1;
+        int childCount = Math.min(getChildList(parentPosition).size(), visibleChildCount + childPageSize);
+        if (childCount <= visibleChildCount) {
+            return;
+        }
+        positionIndex.setRowCount(parentPosition, childCount + 1);
+        notifications.onInserted(getFlatParentPosition(parentPosition) + 1 + visibleChildCount, childCount - visibleChildCount);
+    }
+
+    /**
+     * Loads the next page of children once the current bind pass is over, as the adapter can't
+     * be notified while the RecyclerView lays out its rows.
+     */
+    private void postLoadMoreChildren(final int parentPosition) {
+        if (recyclerView == null) {
+            return;
+        }
+        final int postedStructureVersion = structureVersion;
+        recyclerView.post(new Runnable() {
+            @Override
+            public void run() {
+                // rows moved since, the last child will be bound again if it is still shown
+                if (postedStructureVersion == structureVersion) {
+                    loadMoreChildren(parentPosition);
+                }
+            }
+        });
+    }
+
+    @NonNull
+    private RealmList<C> getChildList(int parentPosition) {
+        P parent = virtualFlatList ? parentList.get(parentPosition) : segmentedFlatList.getParentWrapper(parentPosition).getParent();
+        return parent.getChildList();
+    }
+
+    /**
+     * Expands every parent, with a single pass over the flattened list.
+     * <p>
+     * Unlike a click on a parent, bulk operations don't call the {@link ExpandCollapseListener}.
+     */
+    @UiThread
+    public void expandAllParents() {
+        setParentsExpanded(selectAllParents(), true);
+    }
+
+    /**
+     * Collapses every parent, with a single pass over the flattened list.
+     */
+    @UiThread
+    public void collapseAllParents() {
+        setParentsExpanded(selectAllParents(), false);
+    }
+
+    /**
+     * Expands the parents at the given positions, with a single pass over the flattened list.
+     *
+     * @param parentPositions indexes relative to the parent list
+     * @throws IllegalArgumentException if a position is out of the parent list
+     */
+    @UiThread
+    public void expandParents(@NonNull int... parentPositions) {
+        setParentsExpanded(selectParents(parentPositions), true);
+    }
+
+    /**
+     * Collapses the parents at the given positions, with a single pass over the flattened list.
+     *
+     * @param parentPositions indexes relative to the parent list
+     * @throws IllegalArgumentException if a position is out of the parent list
+     */
+    @UiThread
+    public void collapseParents(@NonNull int... parentPositions) {
+        setParentsExpanded(selectParents(parentPositions), false);
+    }
+
+    /**
+     * Expands the parents matching {@code predicate}, with a single pass over the flattened list.
+     */
+    @UiThread
+    public void expandParents(@NonNull ParentPredicate<? super P> predicate) {
+        setParentsExpanded(selectParents(predicate), true);
+    }
+
+    /**
+     * Collapses the parents matching {@code predicate}, with a single pass over the flattened list.
+     */
+    @UiThread
+    public void collapseParents(@NonNull ParentPredicate<? super P> predicate) {
+        setParentsExpanded(selectParents(predicate), false);
+    }
+
+    @NonNull
+    private boolean[] selectAllParents() {
+        boolean[] selected = new boolean[positionIndex.getParentCount()];
+        Arrays.fill(selected, true);
+        return selected;
+    }
+
+    @NonNull
+    private boolean[] selectParents(@NonNull int[] parentPositions) {
+        boolean[] selected = new boolean[positionIndex.getParentCount()];
+        for (int parentPosition : parentPositions) {
+            if (parentPosition < 0 || parentPosition >= selected.length) {
+                throw new IllegalArgumentException("Invalid parent position " + parentPosition
+                        + ", the adapter has " + selected.length + " parents");
+            }
+            selected[parentPosition] = true;
+        }
+        return selected;
+    }
+
+    @NonNull
+    private boolean[] selectParents(@NonNull ParentPredicate<? super P> predicate) {
+        boolean[] selected = new boolean[positionIndex.getParentCount()];
+        for (int i = 0; i < selected.length; i++) {
+            P parent = virtualFlatList ? parentList.get(i) : segmentedFlatList.getParentWrapper(i).getParent();
+            selected[i] = RealmObject.isValid(parent) && predicate.apply(parent);
+        }
+        return selected;
+    }
+
+    /**
+     * Expands or collapses the selected parents, updating their wrappers and rebuilding the
+     * index in a single O(n) pass. Up to {@link #BULK_NOTIFICATION_LIMIT} updated parents, the
+     * children of every updated parent are notified as an inserted or removed range, then the
+     * rows of the updated parents as changed, so the coalescer merges the rows of adjacent
+     * parents and only the affected rows are rebound. Past it, the whole data set is notified as
+     * changed once.
+     *
+     * @param selected the parents to update, by parent position
+     * @param expand   true to expand the selected parents, false to collapse them
+     */
+    @UiThread
+    private void setParentsExpanded(@NonNull boolean[] selected, boolean expand) {
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
+        int parentCount = positionIndex.getParentCount();
+        int[] rowCounts = new int[parentCount];
+        boolean[] expanded = new boolean[parentCount];
+        int updatingCount = 0;
+        for (int i = 0; i < parentCount; i++) {
+            if (selected[i] && positionIndex.isExpanded(i) != expand) {
+                updatingCount++;
+            }
+        }
+        if (updatingCount == 0) {
+            return;
+        }
+        boolean notifyRanges = updatingCount <= BULK_NOTIFICATION_LIMIT;
+        // flat positions of the updated parents, once every parent is updated
+        int[] updatedPositions = new int[notifyRanges ? updatingCount : 0];
+        int updatedCount = 0;
+
+        notifications.beginBatch();
+        try {
+            int newFlatParentPosition = 0;
+            for (int i = 0; i < parentCount; i++) {
+                int oldRowCount = positionIndex.getRowCount(i);
+                boolean wasExpanded = positionIndex.isExpanded(i);
+                expanded[i] = selected[i] ? expand : wasExpanded;
+
+                if (expanded[i] == wasExpanded) {
+                    rowCounts[i] = oldRowCount;
+                } else {
+                    if (virtualFlatList) {
+                        rowCounts[i] = expanded[i] ? getPagedChildCount(parentList.get(i).getChildList().size(), 0) + 1 : 1;
+                    } else {
+                        ExpandableWrapper<P, C> parentWrapper = segmentedFlatList.getParentWrapper(i);
+                        parentWrapper.setExpanded(expanded[i]);
+                        if (expanded[i]) {
+                            rowCounts[i] = getRowCount(parentWrapper);
+                        } else {
+                            parentWrapper.releaseWrappedChildList();
+                            rowCounts[i] = 1;
+                        }
+                    }
+                    queueExpandedState(i, expanded[i]);
+
+                    if (notifyRanges) {
+                        // the parents before this one are already updated, the ones after it not yet
+                        if (expanded[i]) {
+                            notifications.onInserted(newFlatParentPosition + 1, rowCounts[i] - oldRowCount);
+                        } else {
+                            notifications.onRemoved(newFlatParentPosition + 1, oldRowCount - rowCounts[i]);
+                        }
+                        updatedPositions[updatedCount] = newFlatParentPosition;
+                    }
+                    updatedCount++;
+                }
+                newFlatParentPosition += rowCounts[i];
+            }
+            positionIndex.rebuild(rowCounts, expanded, parentCount);
+            if (notifyRanges) {
+                // the rows of adjacent updated parents are merged into a single changed range
+                for (int i = 0; i < updatedCount; i++) {
+                    notifications.onChanged(updatedPositions[i], 1, null);
+                }
+            }
+        } finally {
+            notifications.endBatch();
+        }
+        if (expansionStateStore != null) {
+            expansionStateStore.scheduleFlush();
+        }
+        if (!notifyRanges) {
+            structureVersion++;
+            dispatchDataSetChanged();
+        }
+
+        if (childListenerWindowMargin != NO_CHILD_LISTENER_WINDOW) {
+            updateChildListenerWindow();
+            addChildCollectionListeners();
+        } else {
+            for (int i = 0; i < parentCount; i++) {
+                if (selected[i]) {
+                    updateChildCollectionListener(i);
+                }
+            }
+        }
+        reportExpansionChanged(updatedCount, expand, startNanos);
+    }
+
+    /**
+     * Removes a range of parents, along with their visible children, from the flattened list
+     * and notifies the removed rows as a single range.
+     *
+     * @param parentPosition index relative to the parent list of the first removed parent
+     * @param count The number of removed parents
+     */
+    @UiThread
+    private void removeParentRange(int parentPosition, int count) {
+        int flatParentPosition = getFlatParentPosition(parentPosition);
+        int rowCount = positionIndex.getRowCount(parentPosition, count);
+        if (!virtualFlatList) {
+            segmentedFlatList.removeParentWrappers(parentPosition, count);
+        }
+        positionIndex.removeParents(parentPosition, count);
+        notifications.onRemoved(flatParentPosition, rowCount);
+    }
+
+    /**
+     * Inserts a range of parents from {@link #parentList}, along with the children of the
+     * initially expanded ones, into the flattened list and notifies the inserted rows as a
+     * single range.
+     *
+     * @param parentPosition index relative to the parent list of the first inserted parent
+     * @param count The number of inserted parents
+     */
+    @UiThread
+    private void insertParentRange(int parentPosition, int count) {
+        int flatParentPosition = parentPosition < positionIndex.getParentCount()
+                ? getFlatParentPosition(parentPosition)
+                : getItemCount();
+        List<ExpandableWrapper<P, C>> insertedWrappers = new ArrayList<>(virtualFlatList ? 0 : count);
+        int[] rowCounts = new int[count];
+        boolean[] expanded = new boolean[count];
+        int insertedRowCount = 0;
+        for (int i = 0; i < count; i++) {
+            P parent = parentList.get(parentPosition + i);
+            expanded[i] = isInitiallyExpanded(parent);
+            if (virtualFlatList) {
+                rowCounts[i] = expanded[i] ? getPagedChildCount(parent.getChildList().size(), 0) + 1 : 1;
+            } else {
+                ExpandableWrapper<P, C> parentWrapper = generateParentWrapper(parent, expanded[i]);
+                insertedWrappers.add(parentWrapper);
+                rowCounts[i] = getRowCount(parentWrapper);
+            }
+            insertedRowCount += rowCounts[i];
         }
+        if (!virtualFlatList) {
+            segmentedFlatList.insertParentWrappers(parentPosition, insertedWrappers);
+        }
+        positionIndex.insertParents(parentPosition, rowCounts, expanded, count);
+        notifications.onInserted(flatParentPosition, insertedRowCount);
     }
 
     /**
@@ -653,14 +2261,7 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
             return 0;
         }
 
-        int parentCount = -1;
-        for (int i = 0; i <= flatPosition; i++) {
-            ExpandableWrapper<P, C> listItem = flatItemList.get(i);
-            if (listItem.isParent()) {
-                parentCount++;
-            }
-        }
-        return parentCount;
+        return positionIndex.getNearestParentPosition(flatPosition);
     }
 
     /**
@@ -673,16 +2274,7 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
             return 0;
         }
 
-        int childCount = 0;
-        for (int i = 0; i < flatPosition; i++) {
-            ExpandableWrapper<P, C> listItem = flatItemList.get(i);
-            if (listItem.isParent()) {
-                childCount = 0;
-            } else {
-                childCount++;
-            }
-        }
-        return childCount;
+        return positionIndex.getChildPosition(flatPosition);
     }
 
     /**
@@ -691,17 +2283,21 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
      */
     @UiThread
     private int getFlatParentPosition(int parentPosition) {
-        int parentCount = -1;
-        for (int i = 0, size = flatItemList.size(); i < size; i++) {
-            ExpandableWrapper<P, C> listItem = flatItemList.get(i);
-            if (listItem.isParent()) {
-                parentCount++;
-                if (parentCount == parentPosition) {
-                    return i;
-                }
-            }
+        return positionIndex.getFlatParentPosition(parentPosition);
+    }
+
+    /**
+     * Notifies the observers that the whole data set changed, forgetting the cached view types
+     * and row projections.
+     */
+    private void dispatchDataSetChanged() {
+        if (viewTypeCache != null) {
+            viewTypeCache.reset(getItemCount());
         }
-        return NO_POSITION;
+        if (rowProjectionCache != null) {
+            rowProjectionCache.clear();
+        }
+        super.notifyDataSetChanged();
     }
 
     /**
@@ -713,41 +2309,84 @@ public abstract class RealmExpandableRecyclerAdapter<P extends Parent<C>, C exte
      */
     @UiThread
     public void notifyParentDataSetChanged() {
-        flatItemList = generateFlattenedParentChildList(getData());
-        super.notifyDataSetChanged();
+        regenerateFlattenedParentChildList();
+        dispatchDataSetChanged();
+    }
+
+    /**
+     * Regenerates the flattened list from {@link #parentList} and registers the child listeners
+     * again, without notifying the observers.
+     */
+    private void regenerateFlattenedParentChildList() {
+        structureVersion++;
+        generateFlattenedParentChildList(getData());
+        removeChildCollectionListeners();
+        updateChildListenerWindow();
+        addChildCollectionListeners();
     }
 
     /**
-     * Generates a full list of all parents and their children, in order.
+     * Generates the wrappers of all parents and their children, and the index of their rows.
      *
      * @param parentList A list of the parents from
      *                   the {@link RealmExpandableRecyclerAdapter}
-     * @return A list of all parents and their children, expanded
      */
-    private RealmList<ExpandableWrapper<P, C>> generateFlattenedParentChildList(@NonNull OrderedRealmCollection<P> parentList) {
-        RealmList<ExpandableWrapper<P, C>> flatItemList = new RealmList<>();
-        for (int i = 0, size = parentList.size(); i < size; i++) {
+    private void generateFlattenedParentChildList(@NonNull OrderedRealmCollection<P> parentList) {
+        long startNanos = metricsListener != null ? System.nanoTime() : 0;
+        int parentCount = parentList.size();
+        List<ExpandableWrapper<P, C>> parentWrappers = new ArrayList<>(virtualFlatList ? 0 : parentCount);
+        int[] rowCounts = new int[parentCount];
+        boolean[] expanded = new boolean[parentCount];
+        for (int i = 0; i < parentCount; i++) {
             P parent = parentList.get(i);
-            generateParentWrapper(flatItemList, parent, parent.isExpanded());
+            expanded[i] = isInitiallyExpanded(parent);
+            if (virtualFlatList) {
+                rowCounts[i] = expanded[i] ? getPagedChildCount(parent.getChildList().size(), 0) + 1 : 1;
+                continue;
+            }
+            ExpandableWrapper<P, C> parentWrapper = generateParentWrapper(parent, expanded[i]);
+            parentWrappers.add(parentWrapper);
+            rowCounts[i] = getRowCount(parentWrapper);
         }
-        return flatItemList;
+        segmentedFlatList.setParentWrappers(parentWrappers);
+        positionIndex.rebuild(rowCounts, expanded, parentCount);
+        reportFlattened(startNanos);
     }
 
-    private void generateParentWrapper(RealmList<ExpandableWrapper<P, C>> flatItemList, P parent, boolean shouldExpand) {
-        ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(parent);
-        flatItemList.add(parentWrapper);
-        if (shouldExpand) {
-            generateExpandedChildren(flatItemList, parentWrapper);
+    private void reportFlattened(long startNanos) {
+        if (metricsListener != null) {
+            metricsListener.onFlattened(positionIndex.getParentCount(), positionIndex.getFlatItemCount(),
+                    System.nanoTime() - startNanos);
         }
     }
 
-    private void generateExpandedChildren(RealmList<ExpandableWrapper<P, C>> flatItemList, ExpandableWrapper<P, C> parentWrapper) {
-        parentWrapper.setExpanded(true);
+    /**
+     * @return the wrapper of {@code parent}, its children are wrapped once displayed
+     */
+    private ExpandableWrapper<P, C> generateParentWrapper(P parent, boolean shouldExpand) {
+        ExpandableWrapper<P, C> parentWrapper = new ExpandableWrapper<>(parent);
+        parentWrapper.setExpanded(shouldExpand);
+        return parentWrapper;
+    }
+
+    /**
+     * @return The number of rows of a parent wrapper, including its own row
+     */
+    private int getRowCount(ExpandableWrapper<P, C> parentWrapper) {
+        return parentWrapper.isExpanded() ? getPagedChildCount(parentWrapper.getParent().getChildList().size(), 0) + 1 : 1;
+    }
 
-        RealmList<ExpandableWrapper<P, C>> wrappedChildList = parentWrapper.getWrappedChildList();
-        for (int j = 0, size = wrappedChildList.size(); j < size; j++) {
-            ExpandableWrapper<P, C> childWrapper = wrappedChildList.get(j);
-            flatItemList.add(childWrapper);
+    /**
+     * @param childCount        The number of children of a parent
+     * @param visibleChildCount The number of children the parent displays, 0 if it is collapsed
+     * @return The number of children the parent should display, keeping the pages it already
+     * loaded when children are paged in
+     */
+    private int getPagedChildCount(int childCount, int visibleChildCount) {
+        if (childPageSize == NO_CHILD_PAGING) {
+            return childCount;
         }
+        int pageCount = Math.max((visibleChildCount + childPageSize - 1) / childPageSize, 1);
+        return (int) Math.min(childCount, (long) pageCount * childPageSize);
     }
 }
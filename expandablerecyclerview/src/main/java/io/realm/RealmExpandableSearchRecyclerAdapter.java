@@ -1,6 +1,11 @@
 package io.realm;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.support.v7.widget.RecyclerView;
 
 import io.realm.model.Parent;
 import io.realm.model.Child;
@@ -8,6 +13,17 @@ import io.realm.model.Child;
 public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>, C extends Child, PVH extends ParentViewHolder, CVH extends ChildViewHolder>
         extends RealmExpandableRecyclerAdapter<P, C, PVH, CVH> {
 
+    /**
+     * Default time to wait for more input before running an asynchronous filter query.
+     */
+    public static final long DEFAULT_FILTER_DEBOUNCE_MILLIS = 250;
+
+    /**
+     * Default number of recent filter results kept for reuse. Realm runs every cached query
+     * again after each commit, so only a few are kept.
+     */
+    public static final int DEFAULT_FILTER_CACHE_SIZE = 4;
+
     @NonNull
     private OrderedRealmCollection<P> originalData;
     private String filterKey;
@@ -17,6 +33,23 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
     private String sortKey;
     private String basePredicate;
 
+    private boolean asyncFilter;
+    private long filterDebounceMillis = DEFAULT_FILTER_DEBOUNCE_MILLIS;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    @Nullable
+    private String pendingInput;
+    @Nullable
+    private RealmResults<P> pendingResults;
+    @Nullable
+    private String pendingResultsInput;
+
+    private final FilterCache<RealmResults<P>> filterCache = new FilterCache<RealmResults<P>>(DEFAULT_FILTER_CACHE_SIZE) {
+        @Override
+        boolean isValid(@NonNull RealmResults<P> results) {
+            return results.isValid();
+        }
+    };
+
     public RealmExpandableSearchRecyclerAdapter(
             @NonNull OrderedRealmCollection<P> data,
             @NonNull String filterKey) {
@@ -31,7 +64,19 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
             Sort sortOrder,
             String sortKey,
             String basePredicate) {
-        super(data);
+        this(data, filterKey, useContains, casing, sortOrder, sortKey, basePredicate, false);
+    }
+
+    public RealmExpandableSearchRecyclerAdapter(
+            @NonNull OrderedRealmCollection<P> data,
+            @NonNull String filterKey,
+            boolean useContains,
+            Case casing,
+            Sort sortOrder,
+            String sortKey,
+            String basePredicate,
+            boolean virtualFlatList) {
+        super(data, virtualFlatList);
         this.originalData = data;
         this.filterKey = filterKey;
         this.useContains = useContains;
@@ -41,10 +86,58 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
         this.basePredicate = basePredicate;
     }
 
+    /**
+     * Filters the parents by {@code input} and displays the results.
+     * <p>
+     * In asynchronous mode (see {@link #setAsyncFilter(boolean)}) the query is only started once
+     * no new input arrived for the debounce window, runs on a background thread, and the
+     * results replace the displayed data once they are loaded. A query superseded by newer input
+     * never reaches the adapter.
+     * <p>
+     * Results of recent inputs are reused as is. When the input only narrows a recent input,
+     * e.g. "tac" after "ta", the query runs against the recent results instead of the whole data.
+     */
+    @UiThread
     public void filter(String input) {
         if (!isDataValid()) return;
-        RealmQuery<P> where = originalData.where();
-        OrderedRealmCollection<P> filteredData;
+        if (asyncFilter) {
+            pendingInput = input;
+            handler.removeCallbacks(asyncFilterRunnable);
+            handler.postDelayed(asyncFilterRunnable, filterDebounceMillis);
+            return;
+        }
+
+        RealmResults<P> filteredData = filterCache.get(input);
+        if (filteredData == null) {
+            RealmQuery<P> where = buildFilterQuery(input);
+            if (sortKey == null) {
+                filteredData = where.findAll();
+            } else {
+                filteredData = where.findAllSorted(sortKey, sortOrder);
+            }
+            filterCache.put(input, filteredData);
+        }
+        showFilterResults(filteredData);
+    }
+
+    private void showFilterResults(@NonNull RealmResults<P> results) {
+        if (results != getData()) {
+            updateData(results);
+        }
+    }
+
+    /**
+     * @return the recent results {@code input} narrows, see
+     * {@link FilterCache#findNarrowedResults(String, boolean)}, or the whole data
+     */
+    @NonNull
+    private OrderedRealmCollection<P> getFilterBase(@NonNull String input) {
+        RealmResults<P> narrowedResults = filterCache.findNarrowedResults(input, useContains);
+        return narrowedResults != null ? narrowedResults : originalData;
+    }
+
+    private RealmQuery<P> buildFilterQuery(String input) {
+        RealmQuery<P> where = getFilterBase(input).where();
         if (input.isEmpty() && basePredicate != null) {
             if (useContains) {
                 where = where.contains(filterKey, basePredicate, casing);
@@ -58,13 +151,118 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
                 where = where.beginsWith(filterKey, input, casing);
             }
         }
+        return where;
+    }
 
-        if (sortKey == null) {
-            filteredData = where.findAll();
-        } else {
-            filteredData = where.findAllSorted(sortKey, sortOrder);
+    private final Runnable asyncFilterRunnable = new Runnable() {
+        @Override
+        public void run() {
+            String input = pendingInput;
+            pendingInput = null;
+            if (input == null || !isDataValid()) return;
+
+            cancelPendingFilter();
+            RealmResults<P> cachedResults = filterCache.get(input);
+            if (cachedResults != null) {
+                showFilterResults(cachedResults);
+                return;
+            }
+
+            RealmQuery<P> where = buildFilterQuery(input);
+            if (sortKey == null) {
+                pendingResults = where.findAllAsync();
+            } else {
+                pendingResults = where.findAllSortedAsync(sortKey, sortOrder);
+            }
+            pendingResultsInput = input;
+            pendingResults.addChangeListener(asyncFilterListener);
+        }
+    };
+
+    private final RealmChangeListener<RealmResults<P>> asyncFilterListener = new RealmChangeListener<RealmResults<P>>() {
+        @Override
+        public void onChange(RealmResults<P> results) {
+            if (results != pendingResults || !results.isLoaded()) return;
+            results.removeChangeListener(this);
+            pendingResults = null;
+            filterCache.put(pendingResultsInput, results);
+            pendingResultsInput = null;
+            showFilterResults(results);
+        }
+    };
+
+    /**
+     * Drops the results of an asynchronous filter query that hasn't loaded yet.
+     */
+    private void cancelPendingFilter() {
+        if (pendingResults != null) {
+            // results of a closed Realm don't notify anymore, and can't remove listeners
+            if (pendingResults.isValid()) {
+                pendingResults.removeChangeListener(asyncFilterListener);
+            }
+            pendingResults = null;
+            pendingResultsInput = null;
+        }
+    }
+
+    /**
+     * Sets how many recent filter results are kept to be reused or refined.
+     * Defaults to {@link #DEFAULT_FILTER_CACHE_SIZE}, 0 disables the reuse.
+     */
+    public void setFilterCacheSize(int filterCacheSize) {
+        if (filterCacheSize < 0) {
+            throw new IllegalArgumentException("The filter cache size cannot be negative.");
+        }
+        filterCache.setMaxSize(filterCacheSize);
+    }
+
+    /**
+     * Forgets the recent filter results, e.g. because the filter settings changed.
+     */
+    private void clearFilterCache() {
+        filterCache.clear();
+    }
+
+    /**
+     * Drops the asynchronous filter waiting for more input or for its results, so no query runs
+     * for a RecyclerView that is gone and the adapter isn't kept reachable by it. The recent
+     * filter results are released as well, so Realm stops running their queries again.
+     *
+     * @param recyclerView The {@code RecyclerView} this adapter is being detached from
+     */
+    @Override
+    @UiThread
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        handler.removeCallbacks(asyncFilterRunnable);
+        pendingInput = null;
+        cancelPendingFilter();
+        clearFilterCache();
+        super.onDetachedFromRecyclerView(recyclerView);
+    }
+
+    /**
+     * If true, {@link #filter(String)} debounces its input and runs the query asynchronously,
+     * swapping the results in once they are loaded. Defaults to false.
+     */
+    @UiThread
+    public void setAsyncFilter(boolean asyncFilter) {
+        this.asyncFilter = asyncFilter;
+        if (!asyncFilter) {
+            handler.removeCallbacks(asyncFilterRunnable);
+            pendingInput = null;
+            cancelPendingFilter();
+        }
+    }
+
+    /**
+     * Sets how long an asynchronous filter waits for more input before starting its query.
+     * Defaults to {@link #DEFAULT_FILTER_DEBOUNCE_MILLIS}.
+     */
+    public void setFilterDebounceMillis(long filterDebounceMillis) {
+        if (filterDebounceMillis < 0) {
+            throw new IllegalArgumentException("The filter debounce cannot be negative.");
         }
-        updateData(filteredData);
+        this.filterDebounceMillis = filterDebounceMillis;
     }
 
     /**
@@ -75,6 +273,7 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
             throw new IllegalStateException("The filterKey cannot be null.");
         }
         this.filterKey = filterKey;
+        clearFilterCache();
     }
 
     /**
@@ -82,6 +281,7 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
      */
     public void setUseContains(boolean useContains) {
         this.useContains = useContains;
+        clearFilterCache();
     }
 
     /**
@@ -89,6 +289,7 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
      */
     public void setCasing(Case casing) {
         this.casing = casing;
+        clearFilterCache();
     }
 
     /**
@@ -96,6 +297,7 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
      */
     public void setSortOrder(Sort sortOrder) {
         this.sortOrder = sortOrder;
+        clearFilterCache();
     }
 
     /**
@@ -103,6 +305,7 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
      */
     public void setSortKey(String sortKey) {
         this.sortKey = sortKey;
+        clearFilterCache();
     }
 
     /**
@@ -110,6 +313,7 @@ public abstract class RealmExpandableSearchRecyclerAdapter<P extends Parent<C>,
      */
     public void setBasePredicate(String basePredicate) {
         this.basePredicate = basePredicate;
+        clearFilterCache();
     }
 
     private boolean isDataValid() {
@@ -0,0 +1,137 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Derives a {@code long} key identifying a Realm object.
+ * <p>
+ * Objects of a class with a {@code @PrimaryKey} are keyed by their primary key, which stays the
+ * same across versions of the Realm. Other managed objects are keyed by their
+ * {@link Object#hashCode()}, which Realm derives from their row, so it only identifies them
+ * within one version, as deleting rows can move other rows around.
+ * <p>
+ * Primary keys are read through {@link DynamicRealmObject}, the field holding them is looked up
+ * in the {@link RealmObjectSchema} once per class.
+ */
+final class RealmObjectKeys {
+
+    /**
+     * Key of objects that are no longer valid, it never identifies a row.
+     */
+    static final long NO_KEY = Long.MIN_VALUE;
+
+    /**
+     * Field name cached for classes without primary key.
+     */
+    private static final String NO_PRIMARY_KEY = "";
+
+    /**
+     * Primary key field of the classes seen so far, by class of their managed objects.
+     */
+    private static final Map<Class<?>, String> primaryKeyFields = new ConcurrentHashMap<>();
+
+    private RealmObjectKeys() {
+    }
+
+    static long of(@NonNull RealmModel object) {
+        if (!RealmObject.isManaged(object)) {
+            return System.identityHashCode(object);
+        }
+        if (!RealmObject.isValid(object)) {
+            return NO_KEY;
+        }
+        String primaryKeyField = getPrimaryKeyField(object);
+        if (primaryKeyField == null) {
+            return object.hashCode();
+        }
+        return keyOf(new DynamicRealmObject(object).get(primaryKeyField));
+    }
+
+    /**
+     * @param object a valid managed object
+     * @return the primary key of {@code object}, integral keys boxed as {@link Long}, or
+     * {@code null} if its class has no primary key or its key is {@code null}
+     */
+    @Nullable
+    static Object primaryKeyOf(@NonNull RealmModel object) {
+        String primaryKeyField = getPrimaryKeyField(object);
+        if (primaryKeyField == null) {
+            return null;
+        }
+        Object primaryKey = new DynamicRealmObject(object).get(primaryKeyField);
+        return primaryKey instanceof Number ? (Object) ((Number) primaryKey).longValue() : primaryKey;
+    }
+
+    /**
+     * @param primaryKey a primary key value, {@code null} included
+     * @return the key of the objects with {@code primaryKey}
+     * @throws IllegalArgumentException if {@code primaryKey} is neither integral nor a string
+     */
+    static long keyOf(@Nullable Object primaryKey) {
+        if (primaryKey == null) {
+            return 0;
+        }
+        if (primaryKey instanceof Long || primaryKey instanceof Integer
+                || primaryKey instanceof Short || primaryKey instanceof Byte) {
+            return ((Number) primaryKey).longValue();
+        }
+        if (primaryKey instanceof String) {
+            return hash((String) primaryKey);
+        }
+        throw new IllegalArgumentException("Unsupported primary key type: " + primaryKey.getClass().getName());
+    }
+
+    /**
+     * @return the primary key field of the class of {@code object}, or {@code null} if it has none
+     */
+    @Nullable
+    private static String getPrimaryKeyField(@NonNull RealmModel object) {
+        String primaryKeyField = primaryKeyFields.get(object.getClass());
+        if (primaryKeyField == null) {
+            String className = new DynamicRealmObject(object).getType();
+            RealmObjectSchema schema = RealmObject.getRealm(object).getSchema().get(className);
+            primaryKeyField = schema != null && schema.hasPrimaryKey() ? schema.getPrimaryKey() : NO_PRIMARY_KEY;
+            primaryKeyFields.put(object.getClass(), primaryKeyField);
+        }
+        return primaryKeyField.equals(NO_PRIMARY_KEY) ? null : primaryKeyField;
+    }
+
+    /**
+     * Combines the key of a parent with the key of one of its children, or {@link #NO_KEY} for
+     * the parent row itself, into a row id that differs from the ids of other rows, including the
+     * rows of the same child under other parents, and from {@code RecyclerView.NO_ID}.
+     */
+    static long rowId(long parentKey, long childKey) {
+        long id = mix(mix(parentKey) + childKey);
+        return id == -1 ? 0 : id;
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreads every input bit over the whole output.
+     */
+    private static long mix(long value) {
+        value += 0x9e3779b97f4a7c15L;
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a string, {@code null} included.
+     */
+    static long hash(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
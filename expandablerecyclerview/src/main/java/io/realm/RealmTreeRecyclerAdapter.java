@@ -0,0 +1,484 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import io.realm.model.ExpandableNode;
+
+/**
+ * RecyclerView.Adapter implementation displaying a tree of any depth built from Realm
+ * relationships, e.g. region, site, device and sensor, with the ability to expand and collapse
+ * every node.
+ * <p>
+ * The visible rows are never flattened: a {@link TreePositionIndex} keeps the row count of the
+ * children of every expanded node, so resolving a row, expanding or collapsing a node, and
+ * applying the change set of a child list cost O(log n) per level of the tree.
+ * <p>
+ * One listener is registered per expanded node while the adapter is attached, on the list
+ * returned by {@link ExpandableNode#getChildNodes()}. Collapsing a node drops its children, so
+ * its descendants show up with their {@link ExpandableNode#isExpanded()} state when it is
+ * expanded again.
+ * <p>
+ * Subclasses create their view holders in {@link #onCreateViewHolder(android.view.ViewGroup, int)},
+ * where the view type is the depth of the node by default, and bind them in
+ * {@link #onBindNodeViewHolder(RecyclerView.ViewHolder, ExpandableNode, int, boolean)}.
+ */
+public abstract class RealmTreeRecyclerAdapter<VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> {
+
+    @NonNull
+    private final TreePositionIndex<ExpandableNode> treeIndex = new TreePositionIndex<>();
+
+    /**
+     * Merges the row updates of a Realm notification before they reach the RecyclerView.
+     */
+    @NonNull
+    private final NotificationCoalescer notifications = new NotificationCoalescer(new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(position, count, payload);
+        }
+    });
+
+    /**
+     * Child list listeners by expanded node.
+     */
+    @NonNull
+    private final HashMap<TreePositionIndex.Node<ExpandableNode>, NodeListener> nodeListeners = new HashMap<>();
+
+    private final OrderedRealmCollectionChangeListener rootListener;
+
+    @NonNull
+    private OrderedRealmCollection<? extends ExpandableNode> rootNodes;
+
+    /**
+     * The RecyclerView this adapter is attached to, listeners are only registered while attached.
+     */
+    @Nullable
+    private RecyclerView recyclerView;
+
+    /**
+     * Listener of the child list of an expanded node.
+     */
+    private final class NodeListener implements OrderedRealmCollectionChangeListener<RealmList<ExpandableNode>> {
+        @NonNull
+        private final TreePositionIndex.Node<ExpandableNode> node;
+        @NonNull
+        private final RealmList<ExpandableNode> childNodes;
+
+        NodeListener(@NonNull TreePositionIndex.Node<ExpandableNode> node, @NonNull RealmList<ExpandableNode> childNodes) {
+            this.node = node;
+            this.childNodes = childNodes;
+        }
+
+        @Override
+        public void onChange(RealmList<ExpandableNode> collection, OrderedCollectionChangeSet changeSet) {
+            applyChangeSet(node, collection, changeSet);
+        }
+    }
+
+    /**
+     * Primary constructor.
+     *
+     * @param rootNodes List of the nodes at the top of the tree
+     */
+    public RealmTreeRecyclerAdapter(@NonNull OrderedRealmCollection<? extends ExpandableNode> rootNodes) {
+        if (!rootNodes.isManaged()) {
+            throw new IllegalStateException("Only use this adapter with managed RealmCollection, " +
+                    "for un-managed lists you can just use the RecyclerView.Adapter");
+        }
+        this.rootNodes = rootNodes;
+        rootListener = new OrderedRealmCollectionChangeListener<OrderedRealmCollection<ExpandableNode>>() {
+            @Override
+            public void onChange(OrderedRealmCollection<ExpandableNode> collection, OrderedCollectionChangeSet changeSet) {
+                // null Changes means the async query returns the first time.
+                if (changeSet == null) {
+                    notifyTreeDataSetChanged();
+                    return;
+                }
+                applyChangeSet(treeIndex.getRoot(), collection, changeSet);
+            }
+        };
+        insertNodes(treeIndex.getRoot(), 0, rootNodes, 0, rootNodes.size());
+    }
+
+    /**
+     * Callback called from {@link #onBindViewHolder(RecyclerView.ViewHolder, int)} when the
+     * list item bound to is a node.
+     *
+     * @param holder   The {@code VH} to bind data to
+     * @param node     The {@link ExpandableNode} which holds the data to be bound to the {@code VH}
+     * @param depth    The depth of the node, 0 for the root nodes
+     * @param expanded true if the children of the node are displayed
+     */
+    @UiThread
+    public abstract void onBindNodeViewHolder(@NonNull VH holder, @NonNull ExpandableNode node, int depth, boolean expanded);
+
+    /**
+     * Gets the view type of a node, the depth of the node by default so every level can have its
+     * own layout.
+     *
+     * @param node  The node displayed by the row
+     * @param depth The depth of the node, 0 for the root nodes
+     * @return any integer value identifying the view type for the node
+     */
+    public int getNodeViewType(@NonNull ExpandableNode node, int depth) {
+        return depth;
+    }
+
+    /**
+     * Implementation of Adapter.onBindViewHolder(RecyclerView.ViewHolder, int).
+     * Do not override, bind the rows in
+     * {@link #onBindNodeViewHolder(RecyclerView.ViewHolder, ExpandableNode, int, boolean)}.
+     */
+    @Override
+    @UiThread
+    public void onBindViewHolder(@NonNull VH holder, int flatPosition) {
+        TreePositionIndex.Node<ExpandableNode> node = treeIndex.getNode(flatPosition);
+        //noinspection ConstantConditions
+        onBindNodeViewHolder(holder, node.getValue(), node.getDepth(), node.isExpanded());
+    }
+
+    /**
+     * Implementation of Adapter.getItemViewType(int), delegating to
+     * {@link #getNodeViewType(ExpandableNode, int)}.
+     */
+    @Override
+    public int getItemViewType(int flatPosition) {
+        TreePositionIndex.Node<ExpandableNode> node = treeIndex.getNode(flatPosition);
+        //noinspection ConstantConditions
+        return getNodeViewType(node.getValue(), node.getDepth());
+    }
+
+    /**
+     * Gets the number of visible nodes, in O(1).
+     *
+     * @return The number of nodes currently expanded and their children
+     */
+    @Override
+    @UiThread
+    public int getItemCount() {
+        return treeIndex.getRowCount();
+    }
+
+    /**
+     * @return The node displayed at {@code flatPosition}
+     */
+    @NonNull
+    @UiThread
+    public ExpandableNode getNode(int flatPosition) {
+        //noinspection ConstantConditions
+        return treeIndex.getNode(flatPosition).getValue();
+    }
+
+    /**
+     * @return The depth of the node displayed at {@code flatPosition}, 0 for the root nodes
+     */
+    @UiThread
+    public int getDepth(int flatPosition) {
+        return treeIndex.getNode(flatPosition).getDepth();
+    }
+
+    /**
+     * @return true if the node displayed at {@code flatPosition} is expanded
+     */
+    @UiThread
+    public boolean isExpanded(int flatPosition) {
+        return treeIndex.getNode(flatPosition).isExpanded();
+    }
+
+    /**
+     * Displays the children of the node at {@code flatPosition}, in O(depth * log n) plus the
+     * cost of reading the children that become visible.
+     *
+     * @param flatPosition The flat position of the node to expand
+     */
+    @UiThread
+    public void expandNode(int flatPosition) {
+        TreePositionIndex.Node<ExpandableNode> node = treeIndex.getNode(flatPosition);
+        if (node.isExpanded()) {
+            return;
+        }
+        if (!node.hasChildren()) {
+            insertChildNodes(node);
+        }
+        treeIndex.setExpanded(node, true);
+        notifications.onInserted(flatPosition + 1, node.getRowCount() - 1);
+        addNodeListeners(node);
+    }
+
+    /**
+     * Hides the children of the node at {@code flatPosition}, in O(depth * log n) plus the
+     * cost of releasing the expanded descendants of the node.
+     *
+     * @param flatPosition The flat position of the node to collapse
+     */
+    @UiThread
+    public void collapseNode(int flatPosition) {
+        TreePositionIndex.Node<ExpandableNode> node = treeIndex.getNode(flatPosition);
+        if (!node.isExpanded()) {
+            return;
+        }
+        int childRowCount = node.getRowCount() - 1;
+        removeNodeListeners(node);
+        treeIndex.setExpanded(node, false);
+        treeIndex.releaseChildren(node);
+        notifications.onRemoved(flatPosition + 1, childRowCount);
+    }
+
+    /**
+     * Expands the node at {@code flatPosition} if it is collapsed, collapses it otherwise.
+     *
+     * @param flatPosition The flat position of the node to toggle
+     * @return true if the node is now expanded
+     */
+    @UiThread
+    public boolean toggleNode(int flatPosition) {
+        if (isExpanded(flatPosition)) {
+            collapseNode(flatPosition);
+            return false;
+        }
+        expandNode(flatPosition);
+        return true;
+    }
+
+    /**
+     * @return The nodes at the top of the tree
+     */
+    @NonNull
+    public OrderedRealmCollection<? extends ExpandableNode> getData() {
+        return rootNodes;
+    }
+
+    /**
+     * Set a new list of root nodes and notify any registered observers that the data set has
+     * changed.
+     */
+    @UiThread
+    public void updateData(@NonNull OrderedRealmCollection<? extends ExpandableNode> rootNodes) {
+        if (recyclerView != null) {
+            removeRootListener(this.rootNodes);
+            addRootListener(rootNodes);
+        }
+        this.rootNodes = rootNodes;
+        notifyTreeDataSetChanged();
+    }
+
+    /**
+     * Rebuilds the tree from the root nodes and notifies that the data set changed.
+     */
+    @UiThread
+    public void notifyTreeDataSetChanged() {
+        TreePositionIndex.Node<ExpandableNode> root = treeIndex.getRoot();
+        removeNodeListeners(root);
+        treeIndex.removeChildren(root, 0, root.getChildCount());
+        if (rootNodes.isValid()) {
+            insertNodes(root, 0, rootNodes, 0, rootNodes.size());
+            addNodeListeners(root);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Implementation of Adapter#onAttachedToRecyclerView(RecyclerView).
+     * <p>
+     * Called when this {@link RealmTreeRecyclerAdapter} is attached to a RecyclerView.
+     *
+     * @param recyclerView The {@code RecyclerView} this {@code RealmTreeRecyclerAdapter}
+     *                     is being attached to
+     */
+    @Override
+    @UiThread
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        if (rootNodes.isValid()) {
+            addRootListener(rootNodes);
+            addNodeListeners(treeIndex.getRoot());
+        }
+    }
+
+    /**
+     * Implementation of Adapter.onDetachedFromRecyclerView(RecyclerView)
+     * <p>
+     * Called when this RealmTreeRecyclerAdapter is detached from a RecyclerView.
+     *
+     * @param recyclerView The {@code RecyclerView} this {@code RealmTreeRecyclerAdapter}
+     *                     is being detached from
+     */
+    @Override
+    @UiThread
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        removeNodeListeners(treeIndex.getRoot());
+        if (rootNodes.isValid()) {
+            removeRootListener(rootNodes);
+        }
+        this.recyclerView = null;
+    }
+
+    /**
+     * Applies the deletion, insertion and modification ranges of the change set of the children
+     * of {@code parent}. Only expanded nodes are listened to, and collapsing a node releases its
+     * descendants, so {@code parent} is always displayed.
+     */
+    @UiThread
+    private void applyChangeSet(@NonNull TreePositionIndex.Node<ExpandableNode> parent,
+                                @NonNull OrderedRealmCollection<? extends ExpandableNode> childNodes,
+                                @Nullable OrderedCollectionChangeSet changeSet) {
+        if (changeSet == null) {
+            return;
+        }
+        notifications.beginBatch();
+        try {
+            // For deletions, the adapter has to be notified in reverse order.
+            OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+            for (int i = deletions.length - 1; i >= 0; i--) {
+                OrderedCollectionChangeSet.Range range = deletions[i];
+                int flatPosition = treeIndex.getChildFlatPosition(parent, range.startIndex);
+                int rowCount = treeIndex.getChildRowCount(parent, range.startIndex, range.length);
+                TreePositionIndex.Node<ExpandableNode> child = parent.getChild(range.startIndex);
+                for (int j = 0; j < range.length; j++, child = child.getNextSibling()) {
+                    //noinspection ConstantConditions
+                    removeNodeListeners(child);
+                }
+                treeIndex.removeChildren(parent, range.startIndex, range.length);
+                notifications.onRemoved(flatPosition, rowCount);
+            }
+
+            for (OrderedCollectionChangeSet.Range range : changeSet.getInsertionRanges()) {
+                insertNodes(parent, range.startIndex, childNodes, range.startIndex, range.length);
+                TreePositionIndex.Node<ExpandableNode> child = parent.getChild(range.startIndex);
+                for (int j = 0; j < range.length; j++, child = child.getNextSibling()) {
+                    //noinspection ConstantConditions
+                    addNodeListeners(child);
+                }
+                notifications.onInserted(treeIndex.getChildFlatPosition(parent, range.startIndex),
+                        treeIndex.getChildRowCount(parent, range.startIndex, range.length));
+            }
+
+            // only the row of a modified node changes, its children have their own listener
+            for (OrderedCollectionChangeSet.Range range : changeSet.getChangeRanges()) {
+                for (int j = range.startIndex; j < range.startIndex + range.length; j++) {
+                    notifications.onChanged(treeIndex.getChildFlatPosition(parent, j), 1, null);
+                }
+            }
+        } finally {
+            notifications.endBatch();
+        }
+    }
+
+    /**
+     * Inserts nodes for {@code count} values of {@code values} among the children of
+     * {@code parent}, along with the children of the ones initially expanded.
+     */
+    private void insertNodes(@NonNull TreePositionIndex.Node<ExpandableNode> parent, int position,
+                             @NonNull List<? extends ExpandableNode> values, int fromIndex, int count) {
+        List<TreePositionIndex.Node<ExpandableNode>> nodes = new ArrayList<>(count);
+        for (int i = fromIndex; i < fromIndex + count; i++) {
+            ExpandableNode value = values.get(i);
+            nodes.add(treeIndex.createNode(parent, value, value.isExpanded()));
+        }
+        treeIndex.insertChildren(parent, position, nodes);
+        for (int i = 0; i < count; i++) {
+            TreePositionIndex.Node<ExpandableNode> node = nodes.get(i);
+            if (node.isExpanded()) {
+                insertChildNodes(node);
+            }
+        }
+    }
+
+    private void insertChildNodes(@NonNull TreePositionIndex.Node<ExpandableNode> node) {
+        //noinspection ConstantConditions
+        RealmList<? extends ExpandableNode> childNodes = node.getValue().getChildNodes();
+        int childCount = childNodes == null || !childNodes.isValid() ? 0 : childNodes.size();
+        //noinspection ConstantConditions
+        insertNodes(node, 0, childNodes, 0, childCount);
+    }
+
+    /**
+     * Registers the child list listeners of {@code node} and its expanded descendants, if the
+     * adapter is attached.
+     */
+    private void addNodeListeners(@NonNull TreePositionIndex.Node<ExpandableNode> node) {
+        if (recyclerView == null || !node.isExpanded()) {
+            return;
+        }
+        if (node != treeIndex.getRoot() && !nodeListeners.containsKey(node)) {
+            //noinspection ConstantConditions,unchecked
+            RealmList<ExpandableNode> childNodes = (RealmList<ExpandableNode>) node.getValue().getChildNodes();
+            if (childNodes != null && childNodes.isValid()) {
+                NodeListener listener = new NodeListener(node, childNodes);
+                nodeListeners.put(node, listener);
+                childNodes.addChangeListener(listener);
+            }
+        }
+        for (TreePositionIndex.Node<ExpandableNode> child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            addNodeListeners(child);
+        }
+    }
+
+    /**
+     * Removes the child list listeners of {@code node} and its descendants.
+     */
+    private void removeNodeListeners(@NonNull TreePositionIndex.Node<ExpandableNode> node) {
+        if (nodeListeners.isEmpty()) {
+            return;
+        }
+        NodeListener listener = nodeListeners.remove(node);
+        // the child list of a deleted node is invalid, but its listener still has to go
+        if (listener != null && !listener.childNodes.realm.isClosed()) {
+            listener.childNodes.removeChangeListener(listener);
+        }
+        for (TreePositionIndex.Node<ExpandableNode> child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            removeNodeListeners(child);
+        }
+    }
+
+    private void addRootListener(@NonNull OrderedRealmCollection<? extends ExpandableNode> data) {
+        if (data instanceof RealmResults) {
+            RealmResults<?> results = (RealmResults<?>) data;
+            //noinspection unchecked
+            results.addChangeListener(rootListener);
+        } else if (data instanceof RealmList) {
+            RealmList<?> list = (RealmList<?>) data;
+            //noinspection unchecked
+            list.addChangeListener(rootListener);
+        } else {
+            throw new IllegalArgumentException("RealmCollection not supported: " + data.getClass());
+        }
+    }
+
+    private void removeRootListener(@NonNull OrderedRealmCollection<? extends ExpandableNode> data) {
+        if (data instanceof RealmResults) {
+            RealmResults<?> results = (RealmResults<?>) data;
+            //noinspection unchecked
+            results.removeChangeListener(rootListener);
+        } else if (data instanceof RealmList) {
+            RealmList<?> list = (RealmList<?>) data;
+            //noinspection unchecked
+            list.removeChangeListener(rootListener);
+        } else {
+            throw new IllegalArgumentException("RealmCollection not supported: " + data.getClass());
+        }
+    }
+}
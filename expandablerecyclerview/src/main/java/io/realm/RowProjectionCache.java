@@ -0,0 +1,207 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Projections of the most recently bound rows, keyed by flat position and evicted in least
+ * recently used order.
+ * <p>
+ * Like {@link ViewTypeCache}, the cache follows the row updates sent to the RecyclerView:
+ * removed rows lose their projection, moved rows and the rows after an insertion or a removal
+ * take theirs along, and changed rows are forgotten. Entries are kept in primitive arrays
+ * sorted by position, so lookups are binary searches and updates shift the positions in place,
+ * without allocating, in O(maxSize) whatever the number of rows.
+ */
+class RowProjectionCache {
+
+    private final int maxSize;
+    private final int[] positions;
+    private final Object[] projections;
+    /**
+     * Value of {@link #useCount} when each entry was last used, the smallest one is evicted first.
+     */
+    private final long[] lastUses;
+    private int size;
+    private long useCount;
+
+    /**
+     * @param maxSize The maximum number of cached projections
+     * @throws IllegalArgumentException if {@code maxSize} isn't positive
+     */
+    RowProjectionCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The projection cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        positions = new int[maxSize];
+        projections = new Object[maxSize];
+        lastUses = new long[maxSize];
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The projection of the row at {@code flatPosition}, marked as most recently used,
+     * or {@code null} if it isn't cached
+     */
+    @Nullable
+    Object get(int flatPosition) {
+        int index = indexOf(flatPosition);
+        if (index < 0) {
+            return null;
+        }
+        lastUses[index] = ++useCount;
+        return projections[index];
+    }
+
+    boolean contains(int flatPosition) {
+        return indexOf(flatPosition) >= 0;
+    }
+
+    /**
+     * Caches the projection of the row at {@code flatPosition}, evicting the least recently used
+     * one if the cache is full.
+     */
+    void put(int flatPosition, @NonNull Object projection) {
+        int index = indexOf(flatPosition);
+        if (index >= 0) {
+            projections[index] = projection;
+            lastUses[index] = ++useCount;
+            return;
+        }
+        if (size == maxSize) {
+            removeRange(leastRecentlyUsed(), 1);
+            index = indexOf(flatPosition);
+        }
+        insertAt(-index - 1, flatPosition, projection, ++useCount);
+    }
+
+    /**
+     * Marks the cached projections of {@code count} rows from {@code flatPosition} on as the
+     * most recently used, so the next puts evict other rows first.
+     */
+    void markUsed(int flatPosition, int count) {
+        for (int i = lowerBound(flatPosition), end = lowerBound(flatPosition + count); i < end; i++) {
+            lastUses[i] = ++useCount;
+        }
+    }
+
+    /**
+     * Forgets every projection, e.g. once the whole data set changed.
+     */
+    void clear() {
+        Arrays.fill(projections, 0, size, null);
+        size = 0;
+    }
+
+    void insert(int flatPosition, int count) {
+        for (int i = lowerBound(flatPosition); i < size; i++) {
+            positions[i] += count;
+        }
+    }
+
+    void remove(int flatPosition, int count) {
+        invalidate(flatPosition, count);
+        // the rows left at or after flatPosition were all after the removed ones
+        for (int i = lowerBound(flatPosition); i < size; i++) {
+            positions[i] -= count;
+        }
+    }
+
+    void move(int fromPosition, int toPosition) {
+        int index = indexOf(fromPosition);
+        Object projection = null;
+        long lastUse = 0;
+        if (index >= 0) {
+            projection = projections[index];
+            lastUse = lastUses[index];
+            removeRange(index, 1);
+        }
+        // the rows between both positions keep their order, so the positions stay sorted
+        if (fromPosition < toPosition) {
+            for (int i = lowerBound(fromPosition + 1); i < size && positions[i] <= toPosition; i++) {
+                positions[i]--;
+            }
+        } else {
+            for (int i = lowerBound(toPosition); i < size && positions[i] < fromPosition; i++) {
+                positions[i]++;
+            }
+        }
+        if (projection != null) {
+            insertAt(lowerBound(toPosition), toPosition, projection, lastUse);
+        }
+    }
+
+    void invalidate(int flatPosition, int count) {
+        int from = lowerBound(flatPosition);
+        removeRange(from, lowerBound(flatPosition + count) - from);
+    }
+
+    private void insertAt(int index, int flatPosition, @NonNull Object projection, long lastUse) {
+        System.arraycopy(positions, index, positions, index + 1, size - index);
+        System.arraycopy(projections, index, projections, index + 1, size - index);
+        System.arraycopy(lastUses, index, lastUses, index + 1, size - index);
+        positions[index] = flatPosition;
+        projections[index] = projection;
+        lastUses[index] = lastUse;
+        size++;
+    }
+
+    private void removeRange(int index, int count) {
+        if (count <= 0) {
+            return;
+        }
+        System.arraycopy(positions, index + count, positions, index, size - index - count);
+        System.arraycopy(projections, index + count, projections, index, size - index - count);
+        System.arraycopy(lastUses, index + count, lastUses, index, size - index - count);
+        Arrays.fill(projections, size - count, size, null);
+        size -= count;
+    }
+
+    private int leastRecentlyUsed() {
+        int index = 0;
+        for (int i = 1; i < size; i++) {
+            if (lastUses[i] < lastUses[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return The index of the entry of {@code flatPosition}, or {@code -(insertion index) - 1}
+     */
+    private int indexOf(int flatPosition) {
+        int index = lowerBound(flatPosition);
+        if (index < size && positions[index] == flatPosition) {
+            return index;
+        }
+        return -index - 1;
+    }
+
+    /**
+     * @return The index of the first entry at or after {@code flatPosition}
+     */
+    private int lowerBound(int flatPosition) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions[middle] < flatPosition) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,73 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import io.realm.model.Child;
+import io.realm.model.ExpandableWrapper;
+import io.realm.model.Parent;
+
+/**
+ * Read-only flattened list of parents and children, made of one segment per parent: the
+ * wrapper of the parent, followed by its wrapped children while it is expanded.
+ * <p>
+ * Rows are resolved through the {@link FlatPositionIndex} in O(log n). Expanding or collapsing
+ * a parent only updates its wrapper and the index, and inserting or removing parents only
+ * shifts the list of parent wrappers, so child rows are never spliced in one by one.
+ * The index and the wrappers are updated by the adapter, which keeps them consistent.
+ */
+class SegmentedFlatList<P extends Parent<C>, C extends Child> extends AbstractList<ExpandableWrapper<P, C>>
+        implements RandomAccess {
+
+    @NonNull
+    private final FlatPositionIndex positionIndex;
+    @NonNull
+    private final ArrayList<ExpandableWrapper<P, C>> parentWrappers = new ArrayList<>();
+
+    SegmentedFlatList(@NonNull FlatPositionIndex positionIndex) {
+        this.positionIndex = positionIndex;
+    }
+
+    @Override
+    public ExpandableWrapper<P, C> get(int flatPosition) {
+        if (flatPosition < 0 || flatPosition >= size()) {
+            throw new IndexOutOfBoundsException("Invalid flat position " + flatPosition + ", size is " + size());
+        }
+        long location = positionIndex.locate(flatPosition);
+        ExpandableWrapper<P, C> parentWrapper = parentWrappers.get(FlatPositionIndex.parentPositionOf(location));
+        int childPosition = FlatPositionIndex.childPositionOf(location);
+        return childPosition == FlatPositionIndex.NO_POSITION
+                ? parentWrapper
+                : parentWrapper.getWrappedChild(childPosition);
+    }
+
+    @Override
+    public int size() {
+        return positionIndex.getFlatItemCount();
+    }
+
+    /**
+     * @return the wrapper of the parent at {@code parentPosition}, in O(1)
+     */
+    @NonNull
+    ExpandableWrapper<P, C> getParentWrapper(int parentPosition) {
+        return parentWrappers.get(parentPosition);
+    }
+
+    void setParentWrappers(@NonNull List<ExpandableWrapper<P, C>> wrappers) {
+        parentWrappers.clear();
+        parentWrappers.addAll(wrappers);
+    }
+
+    void insertParentWrappers(int parentPosition, @NonNull List<ExpandableWrapper<P, C>> wrappers) {
+        parentWrappers.addAll(parentPosition, wrappers);
+    }
+
+    void removeParentWrappers(int parentPosition, int count) {
+        parentWrappers.subList(parentPosition, parentPosition + count).clear();
+    }
+}
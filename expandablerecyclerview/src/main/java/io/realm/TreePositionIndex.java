@@ -0,0 +1,487 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Index of a tree of expandable nodes of any depth, flattened into rows: the row of a node is
+ * followed by the rows of its children while it is expanded.
+ * <p>
+ * The children of every node are kept in a balanced binary tree ordered by position, a treap,
+ * where every entry holds the number of nodes and of rows of its subtree. Translating a flat
+ * position into a node descends one level at a time, and expanding or collapsing a node updates
+ * the entries above it at every level, so both cost O(log n) per level instead of walking or
+ * re-flattening the visible rows. Inserting or removing children splits and merges the tree of
+ * their siblings, which costs O(log n) as well, the following siblings are never renumbered.
+ * <p>
+ * The children of a node are materialized on demand and can be dropped once it is collapsed,
+ * so only the expanded part of the tree is held in memory.
+ *
+ * @param <T> the value held by each node
+ */
+class TreePositionIndex<T> {
+
+    /**
+     * A node of the tree, which is also an entry of the treap of its siblings. The root node
+     * holds no value and has no row.
+     */
+    static final class Node<T> {
+        @Nullable
+        final T value;
+        @Nullable
+        final Node<T> parent;
+        final int depth;
+
+        boolean expanded;
+        /**
+         * true once the children of the node are held by the index, even if it has none.
+         */
+        boolean hasChildren;
+        /**
+         * Root of the treap of the children of the node.
+         */
+        @Nullable
+        Node<T> childRoot;
+
+        /**
+         * Heap priority of the entry, parents in the treap have a higher priority.
+         */
+        final int priority;
+        @Nullable
+        Node<T> left;
+        @Nullable
+        Node<T> right;
+        /**
+         * Parent of the entry in the treap of its siblings, {@code null} for the root of the treap.
+         */
+        @Nullable
+        Node<T> up;
+        /**
+         * Number of entries of the subtree of this entry, itself included.
+         */
+        int subtreeSize = 1;
+        /**
+         * Number of rows of the nodes of the subtree of this entry.
+         */
+        int subtreeRowCount = 1;
+
+        Node(@Nullable T value, @Nullable Node<T> parent, boolean expanded, int priority) {
+            this.value = value;
+            this.parent = parent;
+            this.depth = parent == null ? -1 : parent.depth + 1;
+            this.expanded = expanded;
+            this.priority = priority;
+        }
+
+        @Nullable
+        T getValue() {
+            return value;
+        }
+
+        /**
+         * @return The depth of the node, 0 for the children of the root
+         */
+        int getDepth() {
+            return depth;
+        }
+
+        boolean isExpanded() {
+            return expanded;
+        }
+
+        /**
+         * @return true if the children of the node are held by the index
+         */
+        boolean hasChildren() {
+            return hasChildren;
+        }
+
+        int getChildCount() {
+            return sizeOf(childRoot);
+        }
+
+        /**
+         * @return The child at {@code position}, in O(log n)
+         */
+        @NonNull
+        Node<T> getChild(int position) {
+            if (position < 0 || position >= getChildCount()) {
+                throw new IndexOutOfBoundsException("Child " + position + " of " + getChildCount());
+            }
+            Node<T> entry = childRoot;
+            int remaining = position;
+            while (true) {
+                //noinspection ConstantConditions
+                int leftSize = sizeOf(entry.left);
+                if (remaining < leftSize) {
+                    entry = entry.left;
+                } else if (remaining == leftSize) {
+                    return entry;
+                } else {
+                    remaining -= leftSize + 1;
+                    entry = entry.right;
+                }
+            }
+        }
+
+        /**
+         * @return The first child of the node, or {@code null} if it has none
+         */
+        @Nullable
+        Node<T> getFirstChild() {
+            return childRoot == null ? null : leftmost(childRoot);
+        }
+
+        /**
+         * @return The next child of the parent of the node, or {@code null} for the last one.
+         * Walking all children this way costs O(n).
+         */
+        @Nullable
+        Node<T> getNextSibling() {
+            if (right != null) {
+                return leftmost(right);
+            }
+            Node<T> entry = this;
+            while (entry.up != null && entry.up.right == entry) {
+                entry = entry.up;
+            }
+            return entry.up;
+        }
+
+        /**
+         * @return The number of rows of the node, including its own row
+         */
+        int getRowCount() {
+            return expanded && hasChildren ? rowCountOf(childRoot) + 1 : 1;
+        }
+    }
+
+    @NonNull
+    private final Random random = new Random();
+
+    @NonNull
+    private final Node<T> root = new Node<>(null, null, true, 0);
+
+    /**
+     * Results of {@link #split(Node, int)}.
+     */
+    @Nullable
+    private Node<T> splitLeft;
+    @Nullable
+    private Node<T> splitRight;
+
+    TreePositionIndex() {
+        root.hasChildren = true;
+    }
+
+    @NonNull
+    Node<T> getRoot() {
+        return root;
+    }
+
+    /**
+     * @return The number of visible rows
+     */
+    int getRowCount() {
+        return rowCountOf(root.childRoot);
+    }
+
+    /**
+     * @return The node displayed at {@code flatPosition}, in O(depth * log n)
+     */
+    @NonNull
+    Node<T> getNode(int flatPosition) {
+        if (flatPosition < 0 || flatPosition >= getRowCount()) {
+            throw new IndexOutOfBoundsException("Row " + flatPosition + " of " + getRowCount());
+        }
+        Node<T> entry = root.childRoot;
+        int remaining = flatPosition;
+        while (true) {
+            //noinspection ConstantConditions
+            int leftRowCount = rowCountOf(entry.left);
+            if (remaining < leftRowCount) {
+                entry = entry.left;
+                continue;
+            }
+            remaining -= leftRowCount;
+            if (remaining == 0) {
+                return entry;
+            }
+            int rowCount = entry.getRowCount();
+            if (remaining < rowCount) {
+                // one of the rows of the children of the entry
+                remaining--;
+                entry = entry.childRoot;
+            } else {
+                remaining -= rowCount;
+                entry = entry.right;
+            }
+        }
+    }
+
+    /**
+     * @return The flat position of the row of {@code node}, in O(depth * log n). Only meaningful
+     * if the node is visible.
+     */
+    int getFlatPosition(@NonNull Node<T> node) {
+        int flatPosition = 0;
+        Node<T> child = node;
+        while (child.parent != null) {
+            flatPosition += getRowCountBefore(child);
+            if (child.parent != root) {
+                flatPosition++;
+            }
+            child = child.parent;
+        }
+        return flatPosition;
+    }
+
+    /**
+     * @return The flat position of the first child row of {@code node}
+     */
+    int getFirstChildFlatPosition(@NonNull Node<T> node) {
+        return node == root ? 0 : getFlatPosition(node) + 1;
+    }
+
+    /**
+     * @return The flat position of the row of the child at {@code position} of {@code parent}
+     */
+    int getChildFlatPosition(@NonNull Node<T> parent, int position) {
+        return getFirstChildFlatPosition(parent) + getChildRowCountBefore(parent, position);
+    }
+
+    /**
+     * @return The number of rows of {@code count} consecutive children of {@code parent}
+     */
+    int getChildRowCount(@NonNull Node<T> parent, int position, int count) {
+        return getChildRowCountBefore(parent, position + count) - getChildRowCountBefore(parent, position);
+    }
+
+    /**
+     * @return true if the row of {@code node} is displayed, i.e. all of its ancestors are expanded
+     */
+    boolean isVisible(@NonNull Node<T> node) {
+        for (Node<T> parent = node.parent; parent != null; parent = parent.parent) {
+            if (!parent.expanded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a node for {@code value}, to be inserted among the children of {@code parent}.
+     * Its own children can only be inserted once it has been inserted itself.
+     */
+    @NonNull
+    Node<T> createNode(@NonNull Node<T> parent, @NonNull T value, boolean expanded) {
+        return new Node<>(value, parent, expanded, random.nextInt());
+    }
+
+    /**
+     * Inserts nodes created with {@link #createNode(Node, Object, boolean)} among the children of
+     * {@code parent}, along with the rows of their own children, in O((k + 1) * log n) for k
+     * nodes.
+     */
+    void insertChildren(@NonNull Node<T> parent, int position, @NonNull List<Node<T>> nodes) {
+        if (position < 0 || position > parent.getChildCount()) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + parent.getChildCount());
+        }
+        parent.hasChildren = true;
+        Node<T> inserted = null;
+        for (int i = 0, count = nodes.size(); i < count; i++) {
+            Node<T> node = nodes.get(i);
+            node.left = null;
+            node.right = null;
+            node.up = null;
+            update(node);
+            inserted = merge(inserted, node);
+        }
+        split(parent.childRoot, position);
+        setChildRoot(parent, merge(merge(splitLeft, inserted), splitRight));
+        splitLeft = null;
+        splitRight = null;
+        propagateRowCount(parent);
+    }
+
+    /**
+     * Removes {@code count} children of {@code parent}, along with the rows of their own
+     * children, in O(log n).
+     */
+    void removeChildren(@NonNull Node<T> parent, int position, int count) {
+        if (position < 0 || count < 0 || position + count > parent.getChildCount()) {
+            throw new IndexOutOfBoundsException("Children " + position + " to " + (position + count)
+                    + " of " + parent.getChildCount());
+        }
+        split(parent.childRoot, position);
+        Node<T> preceding = splitLeft;
+        split(splitRight, count);
+        if (splitLeft != null) {
+            // the removed nodes are detached from the treap of their former siblings
+            splitLeft.up = null;
+        }
+        setChildRoot(parent, merge(preceding, splitRight));
+        splitLeft = null;
+        splitRight = null;
+        propagateRowCount(parent);
+    }
+
+    /**
+     * Drops the children of a collapsed node, e.g. to release the memory they hold.
+     *
+     * @throws IllegalStateException if the node is expanded
+     */
+    void releaseChildren(@NonNull Node<T> node) {
+        if (node.expanded) {
+            throw new IllegalStateException("The children of an expanded node are displayed");
+        }
+        node.hasChildren = false;
+        node.childRoot = null;
+    }
+
+    /**
+     * Expands or collapses a node, in O(depth * log n).
+     */
+    void setExpanded(@NonNull Node<T> node, boolean expanded) {
+        if (node.expanded == expanded || node == root) {
+            return;
+        }
+        node.expanded = expanded;
+        propagateRowCount(node);
+    }
+
+    /**
+     * Updates the entries above {@code node} in the treap of its siblings after its row count
+     * changed, and the ones of its ancestors, up to the first collapsed one.
+     */
+    private void propagateRowCount(@NonNull Node<T> node) {
+        Node<T> child = node;
+        while (child.parent != null) {
+            for (Node<T> entry = child; entry != null; entry = entry.up) {
+                update(entry);
+            }
+            if (!child.parent.expanded) {
+                return;
+            }
+            child = child.parent;
+        }
+    }
+
+    /**
+     * @return The number of rows of the siblings before {@code node}, in O(log n)
+     */
+    private static <T> int getRowCountBefore(@NonNull Node<T> node) {
+        int rowCount = rowCountOf(node.left);
+        for (Node<T> entry = node; entry.up != null; entry = entry.up) {
+            if (entry.up.right == entry) {
+                rowCount += rowCountOf(entry.up.left) + entry.up.getRowCount();
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * @return The number of rows of the first {@code count} children of {@code parent}, in O(log n)
+     */
+    private static <T> int getChildRowCountBefore(@NonNull Node<T> parent, int count) {
+        int rowCount = 0;
+        int remaining = count;
+        Node<T> entry = parent.childRoot;
+        while (entry != null && remaining > 0) {
+            int leftSize = sizeOf(entry.left);
+            if (remaining <= leftSize) {
+                entry = entry.left;
+            } else {
+                rowCount += rowCountOf(entry.left) + entry.getRowCount();
+                remaining -= leftSize + 1;
+                entry = entry.right;
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * Splits {@code tree} into its first {@code count} entries, stored in {@link #splitLeft}, and
+     * the others, stored in {@link #splitRight}.
+     */
+    private void split(@Nullable Node<T> tree, int count) {
+        if (tree == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        if (sizeOf(tree.left) >= count) {
+            split(tree.left, count);
+            tree.left = splitRight;
+            update(tree);
+            splitRight = tree;
+        } else {
+            split(tree.right, count - sizeOf(tree.left) - 1);
+            tree.right = splitLeft;
+            update(tree);
+            splitLeft = tree;
+        }
+    }
+
+    /**
+     * @return The treap of the entries of {@code left} followed by the ones of {@code right}
+     */
+    @Nullable
+    private static <T> Node<T> merge(@Nullable Node<T> left, @Nullable Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static <T> void setChildRoot(@NonNull Node<T> parent, @Nullable Node<T> childRoot) {
+        parent.childRoot = childRoot;
+        if (childRoot != null) {
+            childRoot.up = null;
+        }
+    }
+
+    /**
+     * Recomputes the subtree size and row count of {@code entry} from its children.
+     */
+    private static <T> void update(@NonNull Node<T> entry) {
+        entry.subtreeSize = 1 + sizeOf(entry.left) + sizeOf(entry.right);
+        entry.subtreeRowCount = entry.getRowCount() + rowCountOf(entry.left) + rowCountOf(entry.right);
+        if (entry.left != null) {
+            entry.left.up = entry;
+        }
+        if (entry.right != null) {
+            entry.right.up = entry;
+        }
+    }
+
+    @NonNull
+    private static <T> Node<T> leftmost(@NonNull Node<T> entry) {
+        Node<T> leftmost = entry;
+        while (leftmost.left != null) {
+            leftmost = leftmost.left;
+        }
+        return leftmost;
+    }
+
+    private static int sizeOf(@Nullable Node<?> entry) {
+        return entry == null ? 0 : entry.subtreeSize;
+    }
+
+    private static int rowCountOf(@Nullable Node<?> entry) {
+        return entry == null ? 0 : entry.subtreeRowCount;
+    }
+}
@@ -0,0 +1,93 @@
+package io.realm;
+
+import java.util.Arrays;
+
+/**
+ * View types of the flattened rows, in a primitive array parallel to them.
+ * <p>
+ * The array follows the row updates sent to the RecyclerView: inserted rows start unknown,
+ * removed and moved rows take their view type with them, and changed rows are forgotten, so
+ * a view type is only computed again for rows a change set named.
+ */
+class ViewTypeCache {
+
+    /**
+     * View type of a row that has not been computed since it was inserted or changed.
+     */
+    static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private int[] viewTypes = new int[0];
+    private int size;
+
+    /**
+     * Forgets every view type, e.g. once the whole data set changed.
+     *
+     * @param rowCount The number of rows
+     */
+    void reset(int rowCount) {
+        ensureCapacity(rowCount);
+        Arrays.fill(viewTypes, 0, rowCount, UNKNOWN);
+        size = rowCount;
+    }
+
+    /**
+     * @return The cached view type of the row at {@code flatPosition}, or {@link #UNKNOWN}
+     */
+    int get(int flatPosition) {
+        return flatPosition < size ? viewTypes[flatPosition] : UNKNOWN;
+    }
+
+    void set(int flatPosition, int viewType) {
+        if (flatPosition < size) {
+            viewTypes[flatPosition] = viewType;
+        }
+    }
+
+    void insert(int flatPosition, int count) {
+        if (flatPosition > size) {
+            // rows past the cached ones are unknown anyway
+            return;
+        }
+        ensureCapacity(size + count);
+        System.arraycopy(viewTypes, flatPosition, viewTypes, flatPosition + count, size - flatPosition);
+        Arrays.fill(viewTypes, flatPosition, flatPosition + count, UNKNOWN);
+        size += count;
+    }
+
+    void remove(int flatPosition, int count) {
+        if (flatPosition + count > size) {
+            size = Math.min(size, flatPosition);
+            return;
+        }
+        System.arraycopy(viewTypes, flatPosition + count, viewTypes, flatPosition, size - flatPosition - count);
+        size -= count;
+    }
+
+    void move(int fromPosition, int toPosition) {
+        if (fromPosition >= size || toPosition >= size) {
+            size = Math.min(size, Math.min(fromPosition, toPosition));
+            return;
+        }
+        int viewType = viewTypes[fromPosition];
+        if (fromPosition < toPosition) {
+            System.arraycopy(viewTypes, fromPosition + 1, viewTypes, fromPosition, toPosition - fromPosition);
+        } else {
+            System.arraycopy(viewTypes, toPosition, viewTypes, toPosition + 1, fromPosition - toPosition);
+        }
+        viewTypes[toPosition] = viewType;
+    }
+
+    void invalidate(int flatPosition, int count) {
+        if (flatPosition >= size) {
+            return;
+        }
+        Arrays.fill(viewTypes, flatPosition, Math.min(flatPosition + count, size), UNKNOWN);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (viewTypes.length >= capacity) {
+            return;
+        }
+        viewTypes = Arrays.copyOf(viewTypes, Math.max(capacity, viewTypes.length + (viewTypes.length >> 1)));
+    }
+}
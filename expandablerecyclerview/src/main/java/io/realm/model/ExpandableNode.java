@@ -0,0 +1,31 @@
+package io.realm.model;
+
+import io.realm.RealmList;
+import io.realm.RealmModel;
+
+/**
+ * Interface for implementing required methods in a node of a tree of any depth,
+ * e.g. region, site, device and sensor.
+ * <p>
+ * Every level can be a different class: a node only has to return its child nodes, which may
+ * themselves be of another class implementing this interface.
+ */
+public interface ExpandableNode extends RealmModel {
+
+    /**
+     * Getter for the list of this node's child nodes.
+     * <p>
+     * If list is empty or {@code null}, the node is a leaf.
+     *
+     * @return A {@link RealmList} of the children of this {@link ExpandableNode}
+     */
+    RealmList<? extends ExpandableNode> getChildNodes();
+
+    /**
+     * Getter used to determine if this {@link ExpandableNode}'s
+     * {@link android.view.View} should show up initially as expanded.
+     *
+     * @return true if expanded, false if not
+     */
+    boolean isExpanded();
+}
@@ -1,6 +1,7 @@
 package io.realm.model;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import io.realm.RealmList;
 import io.realm.RealmModel;
@@ -18,10 +19,14 @@ public class ExpandableWrapper<P extends Parent<C>, C extends Child> implements
     private boolean wrappedParent;
     private boolean expanded;
 
+    @Nullable
     private RealmList<ExpandableWrapper<P, C>> wrappedChildList;
 
     /**
      * Constructor to wrap a parent object of type {@link P}.
+     * <p>
+     * The children of the parent are wrapped lazily, the first time
+     * {@link #getWrappedChildList()} is called.
      *
      * @param parent The parent object to wrap
      */
@@ -29,8 +34,6 @@ public class ExpandableWrapper<P extends Parent<C>, C extends Child> implements
         this.parent = parent;
         wrappedParent = true;
         expanded = false;
-
-        wrappedChildList = generateChildItemList(parent);
     }
 
     /**
@@ -50,7 +53,7 @@ public class ExpandableWrapper<P extends Parent<C>, C extends Child> implements
 
     public void setParent(@NonNull P parent) {
         this.parent = parent;
-        wrappedChildList = generateChildItemList(parent);
+        wrappedChildList = null;
     }
 
     public C getChild() {
@@ -82,6 +85,8 @@ public class ExpandableWrapper<P extends Parent<C>, C extends Child> implements
     }
 
     /**
+     * Wraps the children of the parent on first access.
+     *
      * @return The list of children of a parent
      * @throws IllegalStateException If a parent isn't being wrapped
      */
@@ -90,17 +95,121 @@ public class ExpandableWrapper<P extends Parent<C>, C extends Child> implements
             throw new IllegalStateException("Parent not wrapped");
         }
 
+        RealmList<C> childList = parent.getChildList();
+        if (wrappedChildList == null) {
+            wrappedChildList = new RealmList<>();
+        }
+        // children wrapped by getWrappedChild(int) are kept
+        for (int i = wrappedChildList.size(), size = childList.size(); i < size; i++) {
+            wrappedChildList.add(new ExpandableWrapper<P, C>(childList.get(i)));
+        }
         return wrappedChildList;
     }
 
-    private RealmList<ExpandableWrapper<P, C>> generateChildItemList(P parentListItem) {
-        RealmList<ExpandableWrapper<P, C>> childItemList = new RealmList<>();
+    /**
+     * Wraps the children of the parent up to {@code childPosition} on first access, so a parent
+     * with a large child list only wraps the children that are displayed.
+     *
+     * @param childPosition The position of the child within the child list of the parent
+     * @return The wrapper of the child
+     * @throws IllegalStateException If a parent isn't being wrapped
+     */
+    public ExpandableWrapper<P, C> getWrappedChild(int childPosition) {
+        if (!wrappedParent) {
+            throw new IllegalStateException("Parent not wrapped");
+        }
+
+        if (wrappedChildList == null) {
+            wrappedChildList = new RealmList<>();
+        }
+        if (childPosition >= wrappedChildList.size()) {
+            RealmList<C> childList = parent.getChildList();
+            for (int i = wrappedChildList.size(); i <= childPosition; i++) {
+                wrappedChildList.add(new ExpandableWrapper<P, C>(childList.get(i)));
+            }
+        }
+        return wrappedChildList.get(childPosition);
+    }
 
-        for (C child : parentListItem.getChildList()) {
-            childItemList.add(new ExpandableWrapper<P, C>(child));
+    /**
+     * Drops the wrappers of children removed from the child list of the parent, so the children
+     * already wrapped keep matching the child list.
+     *
+     * @param childPosition The position of the first removed child, before the removal
+     * @param count         The number of removed children
+     * @throws IllegalStateException If a parent isn't being wrapped
+     */
+    public void removeWrappedChildren(int childPosition, int count) {
+        if (!wrappedParent) {
+            throw new IllegalStateException("Parent not wrapped");
+        }
+
+        if (wrappedChildList == null) {
+            return;
+        }
+        // only the first children are wrapped, the others are wrapped on access
+        for (int i = Math.min(childPosition + count, wrappedChildList.size()) - 1; i >= childPosition; i--) {
+            wrappedChildList.remove(i);
+        }
+    }
+
+    /**
+     * Wraps children inserted into the child list of the parent, if they are inserted among the
+     * children already wrapped.
+     *
+     * @param childPosition The position of the first inserted child, after the insertion
+     * @param count         The number of inserted children
+     * @throws IllegalStateException If a parent isn't being wrapped
+     */
+    public void insertWrappedChildren(int childPosition, int count) {
+        if (!wrappedParent) {
+            throw new IllegalStateException("Parent not wrapped");
+        }
+
+        if (wrappedChildList == null || childPosition >= wrappedChildList.size()) {
+            return;
+        }
+        RealmList<C> childList = parent.getChildList();
+        for (int i = 0; i < count; i++) {
+            wrappedChildList.add(childPosition + i, new ExpandableWrapper<P, C>(childList.get(childPosition + i)));
+        }
+    }
+
+    /**
+     * Wraps again the children of a modified range of the child list, which may hold other
+     * objects than before, e.g. after {@link RealmList#set(int, RealmModel)}. Children that
+     * aren't wrapped yet are wrapped on access as usual.
+     *
+     * @param childPosition The position of the first modified child
+     * @param count         The number of modified children
+     * @throws IllegalStateException If a parent isn't being wrapped
+     */
+    public void refreshWrappedChildren(int childPosition, int count) {
+        if (!wrappedParent) {
+            throw new IllegalStateException("Parent not wrapped");
+        }
+
+        if (wrappedChildList == null) {
+            return;
+        }
+        RealmList<C> childList = parent.getChildList();
+        for (int i = childPosition, end = Math.min(childPosition + count, wrappedChildList.size()); i < end; i++) {
+            wrappedChildList.set(i, new ExpandableWrapper<P, C>(childList.get(i)));
+        }
+    }
+
+    /**
+     * Drops the wrapped children of a parent, e.g. once it has been collapsed.
+     * They are generated again by the next call to {@link #getWrappedChildList()}.
+     *
+     * @throws IllegalStateException If a parent isn't being wrapped
+     */
+    public void releaseWrappedChildList() {
+        if (!wrappedParent) {
+            throw new IllegalStateException("Parent not wrapped");
         }
 
-        return childItemList;
+        wrappedChildList = null;
     }
 
     @Override
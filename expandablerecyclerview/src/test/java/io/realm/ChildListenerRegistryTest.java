@@ -0,0 +1,283 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChildListenerRegistryTest {
+
+    private BaseRealm realm;
+    private ChildListenerRegistry<RealmModel> registry;
+
+    @Before
+    public void setUp() {
+        realm = mock(BaseRealm.class);
+        when(realm.isClosed()).thenReturn(false);
+        registry = new ChildListenerRegistry<>();
+    }
+
+    @Test
+    public void register_attachesTheListener() {
+        TestRegistration registration = register(3);
+
+        assertEquals(1, registry.size());
+        assertSame(registration, registry.get(3));
+        assertTrue(registration.isAttached());
+        assertNull(registry.get(2));
+    }
+
+    @Test
+    public void register_outOfOrder_keepsTheParentsSorted() {
+        TestRegistration last = register(9);
+        TestRegistration first = register(0);
+        TestRegistration middle = register(4);
+
+        registry.insertParents(4, 1);
+
+        assertEquals(0, first.getParentPosition());
+        assertEquals(5, middle.getParentPosition());
+        assertEquals(10, last.getParentPosition());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void register_twiceForAParent_throws() {
+        register(3);
+        register(3);
+    }
+
+    @Test
+    public void unregister_detachesTheListener() {
+        TestRegistration registration = register(3);
+
+        assertTrue(registry.unregister(3));
+
+        assertFalse(registration.isAttached());
+        assertNull(registry.get(3));
+        assertEquals(0, registry.size());
+        assertFalse(registry.unregister(3));
+    }
+
+    @Test
+    public void unregisterAll_detachesEveryListener() {
+        List<TestRegistration> registrations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            registrations.add(register(2 * i));
+        }
+
+        registry.unregisterAll();
+
+        assertEquals(0, registry.size());
+        for (TestRegistration registration : registrations) {
+            assertFalse(registration.isAttached());
+        }
+    }
+
+    @Test
+    public void unregisterAll_onAnEmptyRegistry() {
+        registry.unregisterAll();
+
+        assertEquals(0, registry.size());
+        assertNull(registry.get(0));
+    }
+
+    @Test
+    public void detach_skipsTheListenerOfAClosedRealm() {
+        TestRegistration registration = register(0);
+        when(realm.isClosed()).thenReturn(true);
+
+        registry.unregisterAll();
+
+        assertEquals(0, registry.size());
+        assertTrue(registration.isAttached());
+    }
+
+    @Test
+    public void insertParents_shiftsTheFollowingParents() {
+        TestRegistration before = register(1);
+        TestRegistration at = register(4);
+        TestRegistration after = register(7);
+
+        registry.insertParents(4, 2);
+
+        assertEquals(1, before.getParentPosition());
+        assertEquals(6, at.getParentPosition());
+        assertEquals(9, after.getParentPosition());
+        assertSame(at, registry.get(6));
+        assertNull(registry.get(4));
+    }
+
+    @Test
+    public void removeParents_detachesTheRemovedParentsAndShiftsTheFollowingOnes() {
+        TestRegistration before = register(1);
+        TestRegistration first = register(3);
+        TestRegistration last = register(5);
+        TestRegistration after = register(6);
+
+        assertEquals(2, registry.removeParents(3, 3));
+
+        assertFalse(first.isAttached());
+        assertFalse(last.isAttached());
+        assertTrue(after.isAttached());
+        assertEquals(1, before.getParentPosition());
+        assertEquals(3, after.getParentPosition());
+        assertSame(after, registry.get(3));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void insertParents_afterTheLastParent_changesNothing() {
+        TestRegistration registration = register(3);
+
+        registry.insertParents(4, 2);
+
+        assertEquals(3, registration.getParentPosition());
+        assertSame(registration, registry.get(3));
+    }
+
+    @Test
+    public void removeParents_keepsTheParentsRightBeforeAndAfterTheRange() {
+        TestRegistration before = register(1);
+        TestRegistration after = register(4);
+
+        assertEquals(0, registry.removeParents(2, 2));
+
+        assertTrue(before.isAttached());
+        assertTrue(after.isAttached());
+        assertEquals(1, before.getParentPosition());
+        assertEquals(2, after.getParentPosition());
+    }
+
+    @Test
+    public void removeParents_withoutListeners() {
+        TestRegistration after = register(6);
+
+        assertEquals(0, registry.removeParents(2, 2));
+
+        assertEquals(4, after.getParentPosition());
+    }
+
+    @Test
+    public void randomOperations_matchModel() {
+        Random random = new Random(23);
+        for (int run = 0; run < 200; run++) {
+            setUp();
+            TreeMap<Integer, TestRegistration> model = new TreeMap<>();
+            List<TestRegistration> detached = new ArrayList<>();
+            int parentCount = 30;
+            for (int step = 0; step < 60; step++) {
+                int operation = random.nextInt(4);
+                if (operation == 0) {
+                    int position = random.nextInt(parentCount);
+                    if (!model.containsKey(position)) {
+                        model.put(position, register(position));
+                    }
+                } else if (operation == 1) {
+                    int position = random.nextInt(parentCount);
+                    TestRegistration registration = model.remove(position);
+                    assertEquals(registration != null, registry.unregister(position));
+                    if (registration != null) {
+                        detached.add(registration);
+                    }
+                } else if (operation == 2) {
+                    int position = random.nextInt(parentCount + 1);
+                    int count = 1 + random.nextInt(3);
+                    TreeMap<Integer, TestRegistration> shifted = new TreeMap<>();
+                    for (Map.Entry<Integer, TestRegistration> entry : model.entrySet()) {
+                        int key = entry.getKey();
+                        shifted.put(key >= position ? key + count : key, entry.getValue());
+                    }
+                    model = shifted;
+                    parentCount += count;
+                    registry.insertParents(position, count);
+                } else if (parentCount > 3) {
+                    int position = random.nextInt(parentCount - 3);
+                    int count = 1 + random.nextInt(3);
+                    TreeMap<Integer, TestRegistration> shifted = new TreeMap<>();
+                    int removed = 0;
+                    for (Map.Entry<Integer, TestRegistration> entry : model.entrySet()) {
+                        int key = entry.getKey();
+                        if (key < position) {
+                            shifted.put(key, entry.getValue());
+                        } else if (key >= position + count) {
+                            shifted.put(key - count, entry.getValue());
+                        } else {
+                            detached.add(entry.getValue());
+                            removed++;
+                        }
+                    }
+                    model = shifted;
+                    parentCount -= count;
+                    assertEquals(removed, registry.removeParents(position, count));
+                }
+
+                assertEquals(model.size(), registry.size());
+                for (int position = 0; position < parentCount; position++) {
+                    TestRegistration registration = model.get(position);
+                    assertSame("parent " + position, registration, registry.get(position));
+                    if (registration != null) {
+                        assertEquals(position, registration.getParentPosition());
+                        assertTrue(registration.isAttached());
+                    }
+                }
+                for (TestRegistration registration : detached) {
+                    assertFalse(registration.isAttached());
+                }
+            }
+        }
+    }
+
+    private TestRegistration register(int parentPosition) {
+        TestRegistration registration = new TestRegistration(new RecordingList(realm), parentPosition);
+        registry.register(registration);
+        return registration;
+    }
+
+    /**
+     * Child list recording the listeners added to it, in place of a managed list.
+     */
+    private static class RecordingList extends RealmList<RealmModel> {
+        final List<OrderedRealmCollectionChangeListener<RealmList<RealmModel>>> listeners = new ArrayList<>();
+
+        RecordingList(BaseRealm realm) {
+            this.realm = realm;
+        }
+
+        @Override
+        public void addChangeListener(OrderedRealmCollectionChangeListener<RealmList<RealmModel>> listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeChangeListener(OrderedRealmCollectionChangeListener<RealmList<RealmModel>> listener) {
+            listeners.remove(listener);
+        }
+    }
+
+    private static class TestRegistration extends ChildListenerRegistry.Registration<RealmModel> {
+
+        TestRegistration(RecordingList childList, int parentPosition) {
+            super(childList, parentPosition);
+        }
+
+        boolean isAttached() {
+            return ((RecordingList) childList).listeners.contains(this);
+        }
+
+        @Override
+        public void onChange(RealmList<RealmModel> collection, OrderedCollectionChangeSet changeSet) {
+        }
+    }
+}
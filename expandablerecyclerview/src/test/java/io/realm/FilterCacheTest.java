@@ -0,0 +1,154 @@
+package io.realm;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FilterCacheTest {
+
+    private final Set<String> invalidResults = new HashSet<>();
+    private FilterCache<String> cache;
+
+    @Before
+    public void setUp() {
+        invalidResults.clear();
+        cache = createCache(4);
+    }
+
+    @Test
+    public void emptyCache_narrowsNothing() {
+        assertNull(cache.get("ta"));
+        assertNull(cache.findNarrowedResults("ta", true));
+        assertNull(cache.findNarrowedResults("", true));
+    }
+
+    @Test
+    public void get_returnsTheResultsOfTheSameInput() {
+        cache.put("ta", "results of ta");
+
+        assertEquals("results of ta", cache.get("ta"));
+        assertNull(cache.get("t"));
+    }
+
+    @Test
+    public void get_dropsInvalidResults() {
+        cache.put("ta", "results of ta");
+        invalidResults.add("results of ta");
+
+        assertNull(cache.get("ta"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void findNarrowedResults_prefixMatch_refinesTheLongestPrefix() {
+        cache.put("t", "results of t");
+        cache.put("tac", "results of tac");
+        cache.put("ta", "results of ta");
+        cache.put("tx", "results of tx");
+
+        assertEquals("results of tac", cache.findNarrowedResults("taco", false));
+        assertEquals("results of ta", cache.findNarrowedResults("tab", false));
+        assertNull(cache.findNarrowedResults("ac", false));
+    }
+
+    @Test
+    public void findNarrowedResults_containsMatch_refinesTheLongestSubstring() {
+        cache.put("ac", "results of ac");
+        cache.put("co", "results of co");
+        cache.put("aco", "results of aco");
+
+        assertEquals("results of aco", cache.findNarrowedResults("taco", true));
+        assertEquals("results of ac", cache.findNarrowedResults("tack", true));
+        // none of them is a prefix of "taco"
+        assertNull(cache.findNarrowedResults("taco", false));
+    }
+
+    @Test
+    public void findNarrowedResults_sameInput_isItsOwnResults() {
+        cache.put("ta", "results of ta");
+
+        assertEquals("results of ta", cache.findNarrowedResults("ta", false));
+    }
+
+    @Test
+    public void findNarrowedResults_neverRefinesTheEmptyInput() {
+        cache.put("", "results of the base predicate");
+
+        assertNull(cache.findNarrowedResults("ta", true));
+        assertNull(cache.findNarrowedResults("", true));
+    }
+
+    @Test
+    public void findNarrowedResults_skipsInvalidResults() {
+        cache.put("t", "results of t");
+        cache.put("ta", "results of ta");
+        invalidResults.add("results of ta");
+
+        assertEquals("results of t", cache.findNarrowedResults("tac", false));
+    }
+
+    @Test
+    public void put_pastTheMaxSize_evictsTheLeastRecentlyUsed() {
+        cache.put("a", "results of a");
+        cache.put("b", "results of b");
+        cache.put("c", "results of c");
+        cache.put("d", "results of d");
+        cache.get("a");
+
+        cache.put("e", "results of e");
+
+        assertEquals(4, cache.size());
+        assertEquals("results of a", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("results of e", cache.get("e"));
+    }
+
+    @Test
+    public void findNarrowedResults_keepsTheUsageOrder() {
+        cache.put("a", "results of a");
+        cache.put("b", "results of b");
+        cache.put("c", "results of c");
+        cache.put("d", "results of d");
+
+        cache.findNarrowedResults("ab", false);
+        cache.put("e", "results of e");
+
+        // narrowing doesn't count as a use, "a" is still the eldest
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void zeroMaxSize_cachesNothing() {
+        cache.setMaxSize(0);
+
+        cache.put("ta", "results of ta");
+
+        assertEquals(0, cache.size());
+        assertNull(cache.findNarrowedResults("tac", false));
+    }
+
+    @Test
+    public void setMaxSize_dropsTheCachedResults() {
+        cache.put("ta", "results of ta");
+
+        cache.setMaxSize(2);
+
+        assertEquals(0, cache.size());
+    }
+
+    private FilterCache<String> createCache(int maxSize) {
+        return new FilterCache<String>(maxSize) {
+            @Override
+            boolean isValid(@NonNull String results) {
+                return !invalidResults.contains(results);
+            }
+        };
+    }
+}
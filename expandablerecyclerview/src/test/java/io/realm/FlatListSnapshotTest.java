@@ -0,0 +1,115 @@
+package io.realm;
+
+import android.support.v7.util.DiffUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlatListSnapshotTest {
+
+    private static final long NO_KEY = RealmObjectKeys.NO_KEY;
+
+    @Test
+    public void emptySnapshots_haveNoRows() {
+        DiffUtil.Callback callback = FlatListSnapshot.diffCallback(new FlatListSnapshot(0), new FlatListSnapshot(0));
+
+        assertEquals(0, callback.getOldListSize());
+        assertEquals(0, callback.getNewListSize());
+    }
+
+    @Test
+    public void add_pastTheCapacity_keepsEveryRow() {
+        FlatListSnapshot rows = new FlatListSnapshot(0);
+        for (int i = 0; i < 100; i++) {
+            rows.addParent(i, true);
+            rows.addChild(i, 1000 + i);
+        }
+
+        DiffUtil.Callback callback = FlatListSnapshot.diffCallback(rows, rows);
+
+        assertEquals(200, rows.size());
+        for (int i = 0; i < 200; i++) {
+            assertTrue(callback.areItemsTheSame(i, i));
+        }
+        assertFalse(callback.areItemsTheSame(0, 2));
+    }
+
+    @Test
+    public void parentRows_areTheSameByKey() {
+        FlatListSnapshot oldRows = snapshot(parent(1, false), parent(2, false));
+        FlatListSnapshot newRows = snapshot(parent(2, false), parent(1, false));
+
+        DiffUtil.Callback callback = FlatListSnapshot.diffCallback(oldRows, newRows);
+
+        assertTrue(callback.areItemsTheSame(0, 1));
+        assertTrue(callback.areItemsTheSame(1, 0));
+        assertFalse(callback.areItemsTheSame(0, 0));
+    }
+
+    @Test
+    public void parentRow_isNeverTheSameAsAChildRow() {
+        FlatListSnapshot oldRows = snapshot(parent(1, true), child(1, 1));
+        FlatListSnapshot newRows = snapshot(child(1, 1), parent(1, true));
+
+        DiffUtil.Callback callback = FlatListSnapshot.diffCallback(oldRows, newRows);
+
+        assertFalse(callback.areItemsTheSame(0, 0));
+        assertFalse(callback.areItemsTheSame(1, 1));
+        assertTrue(callback.areItemsTheSame(0, 1));
+        assertTrue(callback.areItemsTheSame(1, 0));
+    }
+
+    @Test
+    public void childRows_underOtherParents_differ() {
+        FlatListSnapshot oldRows = snapshot(child(1, 5));
+        FlatListSnapshot newRows = snapshot(child(2, 5));
+
+        assertFalse(FlatListSnapshot.diffCallback(oldRows, newRows).areItemsTheSame(0, 0));
+    }
+
+    @Test
+    public void deletedRows_areNeverTheSame() {
+        FlatListSnapshot rows = snapshot(parent(NO_KEY, false), child(1, NO_KEY), child(NO_KEY, NO_KEY));
+
+        DiffUtil.Callback callback = FlatListSnapshot.diffCallback(rows, rows);
+
+        assertFalse(callback.areItemsTheSame(0, 0));
+        assertFalse(callback.areItemsTheSame(1, 1));
+        assertFalse(callback.areItemsTheSame(2, 2));
+    }
+
+    @Test
+    public void contents_onlyDifferByTheExpandedState() {
+        FlatListSnapshot oldRows = snapshot(parent(1, false), parent(2, true), child(2, 3));
+        FlatListSnapshot newRows = snapshot(parent(1, true), parent(2, true), child(2, 3));
+
+        DiffUtil.Callback callback = FlatListSnapshot.diffCallback(oldRows, newRows);
+
+        assertFalse(callback.areContentsTheSame(0, 0));
+        assertTrue(callback.areContentsTheSame(1, 1));
+        assertTrue(callback.areContentsTheSame(2, 2));
+    }
+
+    private static FlatListSnapshot snapshot(long[]... rows) {
+        FlatListSnapshot snapshot = new FlatListSnapshot(rows.length);
+        for (long[] row : rows) {
+            if (row[0] == 0) {
+                snapshot.addParent(row[1], row[2] != 0);
+            } else {
+                snapshot.addChild(row[1], row[2]);
+            }
+        }
+        return snapshot;
+    }
+
+    private static long[] parent(long parentKey, boolean expanded) {
+        return new long[]{0, parentKey, expanded ? 1 : 0};
+    }
+
+    private static long[] child(long parentKey, long childKey) {
+        return new long[]{1, parentKey, childKey};
+    }
+}
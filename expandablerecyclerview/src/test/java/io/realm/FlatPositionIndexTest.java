@@ -0,0 +1,333 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link FlatPositionIndex} against a naive model: a list of row counts whose flat
+ * positions are found by walking it.
+ */
+public class FlatPositionIndexTest {
+
+    private FlatPositionIndex index;
+    private List<Integer> rowCounts;
+    private List<Boolean> expanded;
+
+    @Before
+    public void setUp() {
+        index = new FlatPositionIndex();
+        rowCounts = new ArrayList<>();
+        expanded = new ArrayList<>();
+    }
+
+    @Test
+    public void emptyIndex() {
+        assertEquals(0, index.getParentCount());
+        assertEquals(0, index.getFlatItemCount());
+        assertEquals(FlatPositionIndex.NO_POSITION, index.getFlatParentPosition(0));
+    }
+
+    @Test
+    public void rebuild_resolvesEveryRow() {
+        rebuild(3, 1, 4, 1, 1, 2);
+
+        assertMatchesModel();
+        assertEquals(0, index.getNearestParentPosition(0));
+        assertEquals(FlatPositionIndex.NO_POSITION, index.getChildPosition(0));
+        assertEquals(0, index.getNearestParentPosition(2));
+        assertEquals(1, index.getChildPosition(2));
+        assertEquals(2, index.getNearestParentPosition(4));
+        assertEquals(FlatPositionIndex.NO_POSITION, index.getChildPosition(4));
+        assertEquals(4, index.getFlatParentPosition(2));
+    }
+
+    @Test
+    public void singleParent_resolvesOnlyItsOwnRows() {
+        rebuild(3);
+
+        assertMatchesModel();
+        assertEquals(0, index.getNearestParentPosition(2));
+        assertEquals(1, index.getChildPosition(2));
+        assertEquals(1, index.getNearestParentPosition(3));
+    }
+
+    @Test
+    public void rowsAtTheEdgeOfAParent_resolveToTheRightParent() {
+        rebuild(1, 4, 1, 2);
+
+        // last child of a parent, then the row of the next parent
+        assertEquals(1, index.getNearestParentPosition(4));
+        assertEquals(2, index.getChildPosition(4));
+        assertEquals(2, index.getNearestParentPosition(5));
+        assertEquals(FlatPositionIndex.NO_POSITION, index.getChildPosition(5));
+        // last row of the list
+        assertEquals(3, index.getNearestParentPosition(7));
+        assertEquals(0, index.getChildPosition(7));
+    }
+
+    @Test
+    public void rebuild_replacesPreviousContent() {
+        rebuild(5, 5, 5);
+        rebuild(1, 2);
+
+        assertMatchesModel();
+    }
+
+    @Test
+    public void rowsPastTheEnd_resolveToParentCount() {
+        rebuild(2, 1);
+
+        assertEquals(2, index.getNearestParentPosition(3));
+    }
+
+    @Test
+    public void locate_packsLargePositions() {
+        int[] counts = new int[70000];
+        Arrays.fill(counts, 1);
+        counts[counts.length - 1] = 40000;
+        rebuild(counts);
+
+        long location = index.locate(index.getFlatItemCount() - 1);
+
+        assertEquals(counts.length - 1, FlatPositionIndex.parentPositionOf(location));
+        assertEquals(39998, FlatPositionIndex.childPositionOf(location));
+        assertEquals(FlatPositionIndex.NO_POSITION, FlatPositionIndex.childPositionOf(index.locate(0)));
+    }
+
+    @Test
+    public void getFlatParentPosition_outOfBounds() {
+        rebuild(2, 1);
+
+        assertEquals(FlatPositionIndex.NO_POSITION, index.getFlatParentPosition(-1));
+        assertEquals(FlatPositionIndex.NO_POSITION, index.getFlatParentPosition(2));
+    }
+
+    @Test
+    public void insertParents_atStartMiddleAndEnd() {
+        rebuild(2, 3, 1);
+
+        insertParents(0, 4);
+        assertMatchesModel();
+        insertParents(2, 1, 1, 3);
+        assertMatchesModel();
+        insertParents(index.getParentCount(), 2);
+        assertMatchesModel();
+    }
+
+    @Test
+    public void insertParents_growsPastCapacity() {
+        for (int i = 0; i < 100; i++) {
+            insertParents(i / 2, 1 + i % 4);
+        }
+
+        assertMatchesModel();
+    }
+
+    @Test
+    public void insertParents_intoAnEmptyIndex() {
+        insertParents(0, 2, 1);
+
+        assertMatchesModel();
+    }
+
+    @Test
+    public void removeParents_atStartMiddleAndEnd() {
+        rebuild(2, 3, 1, 4, 1, 1, 5);
+
+        removeParents(0, 1);
+        assertMatchesModel();
+        removeParents(2, 2);
+        assertMatchesModel();
+        removeParents(index.getParentCount() - 1, 1);
+        assertMatchesModel();
+    }
+
+    @Test
+    public void removeParents_all_leavesAnEmptyIndex() {
+        rebuild(2, 3, 1);
+
+        removeParents(0, 3);
+
+        assertMatchesModel();
+        assertEquals(FlatPositionIndex.NO_POSITION, index.getFlatParentPosition(0));
+        assertEquals(0, index.getNearestParentPosition(0));
+        insertParents(0, 2);
+        assertMatchesModel();
+    }
+
+    @Test
+    public void setExpanded_splicesTheRowsOfAParent() {
+        rebuild(1, 1, 1, 1);
+
+        setExpanded(1, true, 4);
+        assertMatchesModel();
+        assertTrue(index.isExpanded(1));
+        setExpanded(3, true, 2);
+        assertMatchesModel();
+        setExpanded(1, false, 1);
+        assertMatchesModel();
+        assertFalse(index.isExpanded(1));
+    }
+
+    @Test
+    public void setRowCount_keepsExpandedState() {
+        rebuild(1, 3, 1);
+        expanded.set(1, true);
+        index.setExpanded(1, true, 3);
+
+        setRowCount(1, 6);
+
+        assertMatchesModel();
+        assertTrue(index.isExpanded(1));
+    }
+
+    @Test
+    public void reverseBatch_rebuildsTheStaleSuffixOnce() {
+        rebuild(2, 1, 3, 1, 2, 1, 1, 4);
+
+        // deletions of a change set are applied from the end, without a query in between
+        removeParents(6, 1);
+        removeParents(3, 2);
+        removeParents(0, 1);
+        insertParents(1, 2, 2);
+
+        assertMatchesModel();
+    }
+
+    @Test
+    public void setRowCount_whileTheSuffixIsStale() {
+        rebuild(2, 1, 3, 1, 2);
+
+        removeParents(1, 1);
+        setRowCount(3, 5);
+        setRowCount(0, 1);
+
+        assertMatchesModel();
+    }
+
+    @Test
+    public void getRowCount_ofConsecutiveParents() {
+        rebuild(2, 1, 3, 1, 2);
+
+        assertEquals(4, index.getRowCount(1, 2));
+        assertEquals(9, index.getRowCount(0, 5));
+        assertEquals(0, index.getRowCount(2, 0));
+    }
+
+    @Test
+    public void getRowCount_upToTheLastParentOfAStaleSuffix() {
+        rebuild(2, 1, 3);
+
+        removeParents(0, 1);
+
+        assertEquals(4, index.getRowCount(0, 2));
+        assertEquals(3, index.getRowCount(1, 1));
+        assertEquals(0, index.getRowCount(2, 0));
+    }
+
+    @Test
+    public void randomOperations_matchModel() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            setUp();
+            for (int step = 0; step < 100; step++) {
+                int parentCount = index.getParentCount();
+                int operation = random.nextInt(5);
+                if (operation == 0 || parentCount == 0) {
+                    int count = 1 + random.nextInt(3);
+                    int[] counts = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        counts[i] = 1 + random.nextInt(4);
+                    }
+                    insertParents(random.nextInt(parentCount + 1), counts);
+                } else if (operation == 1) {
+                    int position = random.nextInt(parentCount);
+                    removeParents(position, 1 + random.nextInt(Math.min(3, parentCount - position)));
+                } else if (operation == 2) {
+                    int position = random.nextInt(parentCount);
+                    boolean expand = !expanded.get(position);
+                    setExpanded(position, expand, expand ? 1 + random.nextInt(5) : 1);
+                } else if (operation == 3) {
+                    setRowCount(random.nextInt(parentCount), 1 + random.nextInt(5));
+                } else {
+                    // queries are skipped now and then, so stale suffixes pile up
+                    continue;
+                }
+                if (random.nextBoolean()) {
+                    assertMatchesModel();
+                }
+            }
+            assertMatchesModel();
+        }
+    }
+
+    private void rebuild(int... counts) {
+        rowCounts.clear();
+        expanded.clear();
+        boolean[] states = new boolean[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            rowCounts.add(counts[i]);
+            states[i] = counts[i] > 1;
+            expanded.add(states[i]);
+        }
+        index.rebuild(counts, states, counts.length);
+    }
+
+    private void insertParents(int parentPosition, int... counts) {
+        boolean[] states = new boolean[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            states[i] = counts[i] > 1;
+            rowCounts.add(parentPosition + i, counts[i]);
+            expanded.add(parentPosition + i, states[i]);
+        }
+        index.insertParents(parentPosition, counts, states, counts.length);
+    }
+
+    private void removeParents(int parentPosition, int count) {
+        for (int i = 0; i < count; i++) {
+            rowCounts.remove(parentPosition);
+            expanded.remove(parentPosition);
+        }
+        index.removeParents(parentPosition, count);
+    }
+
+    private void setExpanded(int parentPosition, boolean expand, int rowCount) {
+        rowCounts.set(parentPosition, rowCount);
+        expanded.set(parentPosition, expand);
+        index.setExpanded(parentPosition, expand, rowCount);
+    }
+
+    private void setRowCount(int parentPosition, int rowCount) {
+        rowCounts.set(parentPosition, rowCount);
+        index.setRowCount(parentPosition, rowCount);
+    }
+
+    private void assertMatchesModel() {
+        assertEquals(rowCounts.size(), index.getParentCount());
+        int flatPosition = 0;
+        for (int parent = 0; parent < rowCounts.size(); parent++) {
+            int rowCount = rowCounts.get(parent);
+            assertEquals("row count of " + parent, rowCount, index.getRowCount(parent));
+            assertEquals("expanded state of " + parent, expanded.get(parent), index.isExpanded(parent));
+            assertEquals("flat position of " + parent, flatPosition, index.getFlatParentPosition(parent));
+            for (int row = 0; row < rowCount; row++) {
+                assertEquals("parent of row " + flatPosition, parent, index.getNearestParentPosition(flatPosition));
+                assertEquals("child of row " + flatPosition, row - 1, index.getChildPosition(flatPosition));
+                long location = index.locate(flatPosition);
+                assertEquals("located parent of row " + flatPosition, parent, FlatPositionIndex.parentPositionOf(location));
+                assertEquals("located child of row " + flatPosition, row - 1, FlatPositionIndex.childPositionOf(location));
+                flatPosition++;
+            }
+        }
+        assertEquals(flatPosition, index.getFlatItemCount());
+    }
+}
@@ -0,0 +1,274 @@
+package io.realm;
+
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class NotificationCoalescerTest {
+
+    private List<String> dispatched;
+    private NotificationCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        dispatched = new ArrayList<>();
+        coalescer = new NotificationCoalescer(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                dispatched.add("inserted " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                dispatched.add("removed " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                dispatched.add("moved " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                dispatched.add("changed " + position + " " + count + (payload != null ? " " + payload : ""));
+            }
+        });
+    }
+
+    @Test
+    public void outsideOfABatch_updatesAreForwardedImmediately() {
+        coalescer.onInserted(0, 2);
+        assertDispatched("inserted 0 2");
+        coalescer.onInserted(2, 1);
+        assertDispatched("inserted 0 2", "inserted 2 1");
+    }
+
+    @Test
+    public void adjacentInsertions_areMerged() {
+        coalescer.beginBatch();
+        coalescer.onInserted(3, 2);
+        coalescer.onInserted(5, 1);
+        coalescer.onInserted(3, 4);
+        assertDispatched();
+        coalescer.endBatch();
+
+        assertDispatched("inserted 3 7");
+    }
+
+    @Test
+    public void insertionRightAfterTheBlock_isMerged() {
+        coalescer.beginBatch();
+        coalescer.onInserted(3, 2);
+        coalescer.onInserted(5, 2);
+        coalescer.onInserted(8, 1);
+        coalescer.endBatch();
+
+        // position 8 is past the block of rows 3 to 6
+        assertDispatched("inserted 3 4", "inserted 8 1");
+    }
+
+    @Test
+    public void removalsAppliedFromTheEnd_areMerged() {
+        coalescer.beginBatch();
+        coalescer.onRemoved(8, 2);
+        coalescer.onRemoved(5, 3);
+        coalescer.onRemoved(4, 1);
+        coalescer.endBatch();
+
+        assertDispatched("removed 4 6");
+    }
+
+    @Test
+    public void removalAfterTheRemovedBlock_isNotMerged() {
+        coalescer.beginBatch();
+        coalescer.onRemoved(4, 2);
+        coalescer.onRemoved(5, 1);
+        coalescer.onRemoved(3, 2);
+        coalescer.endBatch();
+
+        // the second removal starts past the position of the first one, the third ends at the second
+        assertDispatched("removed 4 2", "removed 3 3");
+    }
+
+    @Test
+    public void overlappingChanges_areMerged() {
+        coalescer.beginBatch();
+        coalescer.onChanged(4, 2, null);
+        coalescer.onChanged(2, 3, null);
+        coalescer.onChanged(6, 1, null);
+        coalescer.endBatch();
+
+        assertDispatched("changed 2 5");
+    }
+
+    @Test
+    public void touchingChanges_areMerged_butNotDisjointOnes() {
+        coalescer.beginBatch();
+        coalescer.onChanged(2, 2, null);
+        coalescer.onChanged(4, 1, null);
+        coalescer.onChanged(6, 1, null);
+        coalescer.endBatch();
+
+        assertDispatched("changed 2 3", "changed 6 1");
+    }
+
+    @Test
+    public void changesWithPayload_areNotMerged() {
+        coalescer.beginBatch();
+        coalescer.onChanged(2, 1, "a");
+        coalescer.onChanged(3, 1, null);
+        coalescer.endBatch();
+
+        assertDispatched("changed 2 1 a", "changed 3 1");
+    }
+
+    @Test
+    public void disjointOrDifferentUpdates_areKeptInOrder() {
+        coalescer.beginBatch();
+        coalescer.onInserted(0, 1);
+        coalescer.onInserted(5, 1);
+        coalescer.onRemoved(5, 1);
+        coalescer.onMoved(1, 3);
+        coalescer.onChanged(0, 1, null);
+        coalescer.endBatch();
+
+        assertDispatched("inserted 0 1", "inserted 5 1", "removed 5 1", "moved 1 3", "changed 0 1");
+    }
+
+    @Test
+    public void emptyUpdates_areDropped() {
+        coalescer.beginBatch();
+        coalescer.onInserted(0, 0);
+        coalescer.onRemoved(0, 0);
+        coalescer.onChanged(0, 0, null);
+        coalescer.endBatch();
+
+        assertDispatched();
+    }
+
+    @Test
+    public void nestedBatches_dispatchOnceTheOutermostEnds() {
+        coalescer.beginBatch();
+        coalescer.beginBatch();
+        coalescer.onInserted(0, 1);
+        coalescer.endBatch();
+        assertDispatched();
+        coalescer.onInserted(1, 1);
+        coalescer.endBatch();
+
+        assertDispatched("inserted 0 2");
+    }
+
+    @Test
+    public void emptyBatch_dispatchesNothing() {
+        coalescer.beginBatch();
+        coalescer.endBatch();
+
+        assertDispatched();
+    }
+
+    @Test
+    public void consecutiveBatches_areNotMergedTogether() {
+        coalescer.beginBatch();
+        coalescer.onInserted(0, 1);
+        coalescer.endBatch();
+        coalescer.beginBatch();
+        coalescer.onInserted(1, 1);
+        coalescer.endBatch();
+
+        assertDispatched("inserted 0 1", "inserted 1 1");
+    }
+
+    @Test
+    public void queueGrowsPastItsInitialCapacity() {
+        coalescer.beginBatch();
+        for (int i = 0; i < 20; i++) {
+            coalescer.onInserted(2 * i, 1);
+        }
+        coalescer.endBatch();
+
+        assertEquals(20, dispatched.size());
+        assertEquals("inserted 38 1", dispatched.get(19));
+    }
+
+    @Test
+    public void randomBatches_produceTheSameList() {
+        Random random = new Random(7);
+        for (int run = 0; run < 500; run++) {
+            final List<Integer> expected = new ArrayList<>();
+            final List<Integer> actual = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                expected.add(i);
+                actual.add(i);
+            }
+            int nextItem = 1000;
+            NotificationCoalescer replaying = new NotificationCoalescer(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    // inserted rows are only compared by count, their content comes from the data
+                    for (int i = 0; i < count; i++) {
+                        actual.add(position, -1);
+                    }
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    for (int i = 0; i < count; i++) {
+                        actual.remove(position);
+                    }
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    actual.add(toPosition, actual.remove(fromPosition));
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                }
+            });
+
+            replaying.beginBatch();
+            for (int step = 0; step < 10; step++) {
+                int size = expected.size();
+                if (random.nextBoolean() || size < 4) {
+                    int position = random.nextInt(size + 1);
+                    int count = 1 + random.nextInt(3);
+                    for (int i = 0; i < count; i++) {
+                        expected.add(position, nextItem++);
+                    }
+                    replaying.onInserted(position, count);
+                } else {
+                    int position = random.nextInt(size - 3);
+                    int count = 1 + random.nextInt(3);
+                    for (int i = 0; i < count; i++) {
+                        expected.remove(position);
+                    }
+                    replaying.onRemoved(position, count);
+                }
+            }
+            replaying.endBatch();
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                if (expected.get(i) < 1000) {
+                    assertEquals("row " + i + " of run " + run, expected.get(i), actual.get(i));
+                } else {
+                    assertEquals("row " + i + " of run " + run, Integer.valueOf(-1), actual.get(i));
+                }
+            }
+        }
+    }
+
+    private void assertDispatched(String... updates) {
+        assertEquals(Arrays.asList(updates), dispatched);
+    }
+}
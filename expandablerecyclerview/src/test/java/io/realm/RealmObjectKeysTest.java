@@ -0,0 +1,83 @@
+package io.realm;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RealmObjectKeysTest {
+
+    private static final long NO_KEY = RealmObjectKeys.NO_KEY;
+
+    @Test
+    public void keyOf_integralKeys_areTheirValue() {
+        assertEquals(42, RealmObjectKeys.keyOf(42L));
+        assertEquals(42, RealmObjectKeys.keyOf(42));
+        assertEquals(42, RealmObjectKeys.keyOf((short) 42));
+        assertEquals(42, RealmObjectKeys.keyOf((byte) 42));
+        assertEquals(Long.MAX_VALUE, RealmObjectKeys.keyOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void keyOf_stringKeys_areTheirHash() {
+        assertEquals(RealmObjectKeys.hash("Pancakes"), RealmObjectKeys.keyOf("Pancakes"));
+    }
+
+    @Test
+    public void keyOf_null_isZero() {
+        assertEquals(0, RealmObjectKeys.keyOf(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyOf_unsupportedKey_throws() {
+        RealmObjectKeys.keyOf(1.5);
+    }
+
+    @Test
+    public void hash_isFnv1a() {
+        assertEquals(0xcbf29ce484222325L, RealmObjectKeys.hash(""));
+        assertEquals(0xaf63dc4c8601ec8cL, RealmObjectKeys.hash("a"));
+        assertEquals(0x85944171f73967e8L, RealmObjectKeys.hash("foobar"));
+    }
+
+    @Test
+    public void hash_null_differsFromEmpty() {
+        assertEquals(0, RealmObjectKeys.hash(null));
+        assertNotEquals(RealmObjectKeys.hash(null), RealmObjectKeys.hash(""));
+    }
+
+    @Test
+    public void rowId_parentRowDiffersFromItsChildren() {
+        assertNotEquals(RealmObjectKeys.rowId(1, NO_KEY), RealmObjectKeys.rowId(1, 0));
+        assertNotEquals(RealmObjectKeys.rowId(1, NO_KEY), RealmObjectKeys.rowId(1, 1));
+    }
+
+    @Test
+    public void rowId_sameChildUnderOtherParents_differs() {
+        assertNotEquals(RealmObjectKeys.rowId(1, 5), RealmObjectKeys.rowId(2, 5));
+        // would collide if the keys were only added up
+        assertNotEquals(RealmObjectKeys.rowId(1, 2), RealmObjectKeys.rowId(2, 1));
+    }
+
+    @Test
+    public void rowId_isStable() {
+        assertEquals(RealmObjectKeys.rowId(3, 4), RealmObjectKeys.rowId(3, 4));
+    }
+
+    @Test
+    public void rowId_ofManyRows_areUniqueAndNeverNoId() {
+        Set<Long> ids = new HashSet<>();
+        for (long parentKey = 0; parentKey < 200; parentKey++) {
+            assertTrue(ids.add(RealmObjectKeys.rowId(parentKey, NO_KEY)));
+            for (long childKey = 0; childKey < 50; childKey++) {
+                long id = RealmObjectKeys.rowId(parentKey, childKey);
+                assertNotEquals(-1, id);
+                assertTrue(ids.add(id));
+            }
+        }
+    }
+}
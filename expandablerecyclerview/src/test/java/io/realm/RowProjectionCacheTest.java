@@ -0,0 +1,313 @@
+package io.realm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RowProjectionCacheTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveSize_throws() {
+        new RowProjectionCache(0);
+    }
+
+    @Test
+    public void put_replacesTheProjectionOfARow() {
+        RowProjectionCache cache = new RowProjectionCache(4);
+
+        cache.put(2, "a");
+        cache.put(2, "b");
+
+        assertEquals(1, cache.size());
+        assertEquals("b", cache.get(2));
+        assertTrue(cache.contains(2));
+        assertFalse(cache.contains(1));
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsedProjection() {
+        RowProjectionCache cache = new RowProjectionCache(3);
+        cache.put(0, "a");
+        cache.put(1, "b");
+        cache.put(2, "c");
+        cache.get(0);
+
+        cache.put(3, "d");
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(1));
+        assertEquals("a", cache.get(0));
+        assertEquals("c", cache.get(2));
+        assertEquals("d", cache.get(3));
+    }
+
+    @Test
+    public void singleEntryCache_keepsTheLastPut() {
+        RowProjectionCache cache = new RowProjectionCache(1);
+
+        cache.put(5, "a");
+        cache.put(2, "b");
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(5));
+        assertEquals("b", cache.get(2));
+    }
+
+    @Test
+    public void fullCache_keepsEveryProjectionUpToItsSize() {
+        RowProjectionCache cache = filledCache("a", "b", "c");
+        RowProjectionCache full = new RowProjectionCache(3);
+        for (int i = 0; i < 3; i++) {
+            full.put(i, cache.get(i));
+        }
+
+        assertEquals(3, full.size());
+        assertProjections(full, "a", "b", "c");
+    }
+
+    @Test
+    public void put_intoAFullCache_beforeAndAfterEveryRow() {
+        RowProjectionCache cache = new RowProjectionCache(2);
+        cache.put(4, "a");
+        cache.put(6, "b");
+
+        // evicts "a", the entry the new row sorts after
+        cache.put(8, "c");
+        // evicts "b", the entry the new row sorts before
+        cache.put(0, "d");
+
+        assertEquals(2, cache.size());
+        assertEquals("d", cache.get(0));
+        assertEquals("c", cache.get(8));
+        assertFalse(cache.contains(4));
+        assertFalse(cache.contains(6));
+    }
+
+    @Test
+    public void markUsed_keepsTheMarkedRowsOnEviction() {
+        RowProjectionCache cache = new RowProjectionCache(4);
+        cache.put(0, "a");
+        cache.put(1, "b");
+        cache.put(2, "c");
+        cache.put(3, "d");
+
+        cache.markUsed(0, 2);
+        cache.put(4, "e");
+        cache.put(5, "f");
+
+        assertProjections(cache, "a", "b", null, null, "e", "f");
+    }
+
+    @Test
+    public void markUsed_ofUncachedRows() {
+        RowProjectionCache cache = new RowProjectionCache(2);
+        cache.put(3, "a");
+        cache.put(4, "b");
+
+        cache.markUsed(0, 3);
+        cache.markUsed(5, 2);
+        cache.put(6, "c");
+
+        assertFalse(cache.contains(3));
+        assertEquals("b", cache.get(4));
+    }
+
+    @Test
+    public void contains_doesNotCountAsUse() {
+        RowProjectionCache cache = new RowProjectionCache(2);
+        cache.put(0, "a");
+        cache.put(1, "b");
+        cache.contains(0);
+
+        cache.put(2, "c");
+
+        assertFalse(cache.contains(0));
+    }
+
+    @Test
+    public void insert_shiftsTheFollowingRows() {
+        RowProjectionCache cache = filledCache("a", "b", "c");
+
+        cache.insert(1, 2);
+
+        assertProjections(cache, "a", null, null, "b", "c");
+    }
+
+    @Test
+    public void remove_dropsTheRemovedRowsAndShiftsTheFollowingOnes() {
+        RowProjectionCache cache = filledCache("a", "b", "c", "d", "e");
+
+        cache.remove(1, 2);
+
+        assertEquals(3, cache.size());
+        assertProjections(cache, "a", "d", "e");
+    }
+
+    @Test
+    public void move_carriesTheProjectionAlong() {
+        RowProjectionCache cache = filledCache("a", "b", "c", "d", "e");
+
+        cache.move(1, 3);
+        assertProjections(cache, "a", "c", "d", "b", "e");
+        cache.move(4, 0);
+        assertProjections(cache, "e", "a", "c", "d", "b");
+    }
+
+    @Test
+    public void move_ofAnUncachedRow_shiftsTheRowsInBetween() {
+        RowProjectionCache cache = new RowProjectionCache(4);
+        cache.put(1, "b");
+        cache.put(2, "c");
+
+        cache.move(0, 2);
+
+        assertProjections(cache, "b", "c", null);
+    }
+
+    @Test
+    public void move_keepsTheUsageOrder() {
+        RowProjectionCache cache = new RowProjectionCache(2);
+        cache.put(0, "a");
+        cache.put(1, "b");
+
+        cache.move(0, 1);
+        cache.put(2, "c");
+
+        // "a" was the least recently used, wherever it moved
+        assertNull(cache.get(1));
+        assertEquals("b", cache.get(0));
+    }
+
+    @Test
+    public void invalidate_forgetsTheChangedRows() {
+        RowProjectionCache cache = filledCache("a", "b", "c", "d");
+
+        cache.invalidate(1, 2);
+
+        assertProjections(cache, "a", null, null, "d");
+    }
+
+    @Test
+    public void updatesPastTheCachedRows_keepTheCachedOnes() {
+        RowProjectionCache cache = filledCache("a", "b");
+
+        cache.insert(2, 3);
+        cache.invalidate(2, 4);
+        cache.remove(3, 2);
+
+        assertEquals(2, cache.size());
+        assertProjections(cache, "a", "b");
+    }
+
+    @Test
+    public void clear_forgetsEveryRow() {
+        RowProjectionCache cache = filledCache("a", "b");
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get(0));
+    }
+
+    @Test
+    public void randomUpdates_matchModel() {
+        Random random = new Random(5);
+        for (int run = 0; run < 300; run++) {
+            int maxSize = 1 + random.nextInt(8);
+            RowProjectionCache cache = new RowProjectionCache(maxSize);
+            // projections by row, and the rows in usage order, least recently used first
+            List<Object> rows = new ArrayList<>();
+            LinkedHashMap<Object, Boolean> usage = new LinkedHashMap<>(16, 0.75f, true);
+            for (int i = 0; i < 20; i++) {
+                rows.add(null);
+            }
+            for (int step = 0; step < 100; step++) {
+                int size = rows.size();
+                int operation = random.nextInt(7);
+                if (operation == 0 || size < 4) {
+                    int position = random.nextInt(size + 1);
+                    int count = 1 + random.nextInt(3);
+                    cache.insert(position, count);
+                    for (int i = 0; i < count; i++) {
+                        rows.add(position, null);
+                    }
+                } else if (operation == 1) {
+                    int position = random.nextInt(size - 3);
+                    int count = 1 + random.nextInt(3);
+                    cache.remove(position, count);
+                    for (int i = 0; i < count; i++) {
+                        usage.remove(rows.remove(position));
+                    }
+                } else if (operation == 2) {
+                    int from = random.nextInt(size);
+                    int to = random.nextInt(size);
+                    cache.move(from, to);
+                    rows.add(to, rows.remove(from));
+                } else if (operation == 3) {
+                    int position = random.nextInt(size);
+                    int count = 1 + random.nextInt(3);
+                    cache.invalidate(position, count);
+                    for (int i = position; i < Math.min(position + count, size); i++) {
+                        usage.remove(rows.set(i, null));
+                    }
+                } else if (operation == 4) {
+                    int position = random.nextInt(size);
+                    Object projection = new Object();
+                    cache.put(position, projection);
+                    usage.remove(rows.set(position, projection));
+                    usage.put(projection, true);
+                    if (usage.size() > maxSize) {
+                        Object eldest = usage.keySet().iterator().next();
+                        usage.remove(eldest);
+                        rows.set(rows.indexOf(eldest), null);
+                    }
+                } else if (operation == 5) {
+                    int position = random.nextInt(size);
+                    Object projection = rows.get(position);
+                    assertSame(projection, cache.get(position));
+                    if (projection != null) {
+                        usage.get(projection);
+                    }
+                } else {
+                    int position = random.nextInt(size);
+                    int count = 1 + random.nextInt(4);
+                    cache.markUsed(position, count);
+                    for (int i = position; i < Math.min(position + count, size); i++) {
+                        if (rows.get(i) != null) {
+                            usage.get(rows.get(i));
+                        }
+                    }
+                }
+
+                assertEquals(usage.size(), cache.size());
+                for (int i = 0; i < rows.size(); i++) {
+                    assertEquals("row " + i, rows.get(i) != null, cache.contains(i));
+                }
+            }
+        }
+    }
+
+    private static RowProjectionCache filledCache(Object... projections) {
+        RowProjectionCache cache = new RowProjectionCache(16);
+        for (int i = 0; i < projections.length; i++) {
+            cache.put(i, projections[i]);
+        }
+        return cache;
+    }
+
+    private static void assertProjections(RowProjectionCache cache, Object... projections) {
+        for (int i = 0; i < projections.length; i++) {
+            assertEquals("row " + i, projections[i], cache.get(i));
+        }
+        assertFalse(cache.contains(projections.length));
+    }
+}
@@ -0,0 +1,373 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link TreePositionIndex} against a naive model: a tree of lists flattened by walking
+ * it.
+ */
+public class TreePositionIndexTest {
+
+    private TreePositionIndex<Integer> index;
+    private TreePositionIndex.Node<Integer> root;
+    private int nextValue;
+
+    @Before
+    public void setUp() {
+        index = new TreePositionIndex<>();
+        root = index.getRoot();
+        nextValue = 0;
+    }
+
+    @Test
+    public void emptyIndex() {
+        assertEquals(0, index.getRowCount());
+        assertEquals(0, root.getChildCount());
+        assertNull(root.getFirstChild());
+        assertEquals(0, index.getChildFlatPosition(root, 0));
+        assertEquals(0, index.getChildRowCount(root, 0, 0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getNode_pastTheRows_throws() {
+        insert(root, 0, 2, false);
+
+        index.getNode(2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void insertChildren_pastTheChildren_throws() {
+        insert(root, 0, 2, false);
+
+        insert(root, 3, 1, false);
+    }
+
+    @Test
+    public void insertChildren_resolvesEveryRow() {
+        List<TreePositionIndex.Node<Integer>> nodes = insert(root, 0, 3, true);
+        insert(nodes.get(0), 0, 2, false);
+        insert(nodes.get(2), 0, 1, false);
+
+        assertValues(0, 3, 4, 1, 2, 5);
+        assertEquals(3, index.getChildFlatPosition(root, 1));
+        assertEquals(3, index.getChildRowCount(root, 0, 1));
+        assertEquals(6, index.getChildRowCount(root, 0, 3));
+    }
+
+    @Test
+    public void insertChildren_inTheMiddle_shiftsTheFollowingSiblings() {
+        insert(root, 0, 3, false);
+
+        insert(root, 1, 2, false);
+
+        assertValues(0, 3, 4, 1, 2);
+        assertEquals(1, root.getChild(3).getValue().intValue());
+        assertEquals(4, index.getFlatPosition(root.getChild(4)));
+    }
+
+    @Test
+    public void insertChildren_intoACollapsedNode_addsNoRows() {
+        List<TreePositionIndex.Node<Integer>> nodes = insert(root, 0, 2, false);
+
+        insert(nodes.get(0), 0, 3, false);
+
+        assertValues(0, 1);
+        assertTrue(nodes.get(0).hasChildren());
+        assertEquals(3, nodes.get(0).getChildCount());
+        assertFalse(index.isVisible(nodes.get(0).getChild(0)));
+
+        index.setExpanded(nodes.get(0), true);
+
+        assertValues(0, 2, 3, 4, 1);
+    }
+
+    @Test
+    public void removeChildren_shiftsTheFollowingRows() {
+        List<TreePositionIndex.Node<Integer>> nodes = insert(root, 0, 4, true);
+        insert(nodes.get(1), 0, 2, false);
+
+        index.removeChildren(root, 1, 2);
+
+        assertValues(0, 3);
+        assertEquals(2, root.getChildCount());
+        assertSame(nodes.get(3), root.getChild(1));
+    }
+
+    @Test
+    public void removeChildren_all_emptiesTheNode() {
+        List<TreePositionIndex.Node<Integer>> nodes = insert(root, 0, 1, true);
+        insert(nodes.get(0), 0, 3, false);
+
+        index.removeChildren(nodes.get(0), 0, 3);
+
+        assertValues(0);
+        assertEquals(1, nodes.get(0).getRowCount());
+        assertTrue(nodes.get(0).hasChildren());
+    }
+
+    @Test
+    public void removeChildren_none_changesNothing() {
+        insert(root, 0, 3, false);
+
+        index.removeChildren(root, 3, 0);
+
+        assertValues(0, 1, 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void removeChildren_pastTheChildren_throws() {
+        insert(root, 0, 3, false);
+
+        index.removeChildren(root, 2, 2);
+    }
+
+    @Test
+    public void setExpanded_updatesTheRowsOfTheAncestors() {
+        TreePositionIndex.Node<Integer> top = insert(root, 0, 1, true).get(0);
+        TreePositionIndex.Node<Integer> middle = insert(top, 0, 1, false).get(0);
+        insert(middle, 0, 2, false);
+        insert(root, 1, 1, false);
+
+        index.setExpanded(middle, true);
+
+        assertValues(0, 1, 2, 3, 4);
+        assertEquals(4, index.getFlatPosition(root.getChild(1)));
+
+        index.setExpanded(middle, false);
+
+        assertValues(0, 1, 4);
+    }
+
+    @Test
+    public void setExpanded_belowACollapsedNode_showsUpOnceItIsExpanded() {
+        TreePositionIndex.Node<Integer> top = insert(root, 0, 1, false).get(0);
+        TreePositionIndex.Node<Integer> middle = insert(top, 0, 1, false).get(0);
+        insert(middle, 0, 2, false);
+
+        index.setExpanded(middle, true);
+
+        assertValues(0);
+
+        index.setExpanded(top, true);
+
+        assertValues(0, 1, 2, 3);
+    }
+
+    @Test
+    public void setExpanded_root_isIgnored() {
+        insert(root, 0, 2, false);
+
+        index.setExpanded(root, false);
+
+        assertValues(0, 1);
+    }
+
+    @Test
+    public void releaseChildren_dropsTheChildrenOfACollapsedNode() {
+        TreePositionIndex.Node<Integer> node = insert(root, 0, 1, true).get(0);
+        insert(node, 0, 2, false);
+        index.setExpanded(node, false);
+
+        index.releaseChildren(node);
+
+        assertFalse(node.hasChildren());
+        assertEquals(0, node.getChildCount());
+        assertNull(node.getFirstChild());
+
+        index.setExpanded(node, true);
+
+        assertValues(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseChildren_ofAnExpandedNode_throws() {
+        TreePositionIndex.Node<Integer> node = insert(root, 0, 1, true).get(0);
+
+        index.releaseChildren(node);
+    }
+
+    @Test
+    public void siblings_areWalkedInOrder() {
+        List<TreePositionIndex.Node<Integer>> nodes = insert(root, 0, 100, false);
+        index.removeChildren(root, 10, 20);
+        nodes.subList(10, 30).clear();
+
+        List<TreePositionIndex.Node<Integer>> walked = new ArrayList<>();
+        for (TreePositionIndex.Node<Integer> node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            walked.add(node);
+        }
+
+        assertEquals(nodes, walked);
+    }
+
+    @Test
+    public void manySiblings_insertedAndRemovedOneByOne() {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            int position = i / 2;
+            values.add(position, insert(root, position, 1, false).get(0).getValue());
+        }
+        for (int i = 0; i < 5000; i++) {
+            index.removeChildren(root, 0, 1);
+            values.remove(0);
+        }
+
+        assertEquals(5000, index.getRowCount());
+        for (int i = 0; i < values.size(); i += 97) {
+            assertEquals(values.get(i), index.getNode(i).getValue());
+            assertEquals(i, index.getFlatPosition(index.getNode(i)));
+        }
+    }
+
+    @Test
+    public void randomUpdates_matchModel() {
+        Random random = new Random(42);
+        ModelNode model = new ModelNode(root, true);
+        model.children = new ArrayList<>();
+
+        for (int step = 0; step < 2000; step++) {
+            List<ModelNode> nodes = new ArrayList<>();
+            collect(model, nodes);
+            ModelNode target = nodes.get(random.nextInt(nodes.size()));
+            int operation = random.nextInt(4);
+            if (operation == 0 && target.children != null) {
+                int position = random.nextInt(target.children.size() + 1);
+                int count = 1 + random.nextInt(4);
+                boolean expanded = random.nextBoolean();
+                // inserted without children, even if expanded
+                for (TreePositionIndex.Node<Integer> node : insert(target.node, position, count, expanded)) {
+                    target.children.add(position++, new ModelNode(node, expanded));
+                }
+            } else if (operation == 1 && target.children != null && !target.children.isEmpty()) {
+                int position = random.nextInt(target.children.size());
+                int count = 1 + random.nextInt(Math.min(3, target.children.size() - position));
+                index.removeChildren(target.node, position, count);
+                target.children.subList(position, position + count).clear();
+            } else if (operation == 2 && target != model) {
+                boolean expanded = !target.expanded;
+                if (expanded && target.children == null) {
+                    insert(target.node, 0, 0, false);
+                    target.children = new ArrayList<>();
+                }
+                index.setExpanded(target.node, expanded);
+                target.expanded = expanded;
+            } else if (operation == 3 && target != model && !target.expanded && target.children != null) {
+                index.releaseChildren(target.node);
+                target.children = null;
+            }
+            if (step % 50 == 0) {
+                assertMatches(model);
+            }
+        }
+        assertMatches(model);
+    }
+
+    private List<TreePositionIndex.Node<Integer>> insert(TreePositionIndex.Node<Integer> parent, int position, int count,
+                                                         boolean expanded) {
+        List<TreePositionIndex.Node<Integer>> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(index.createNode(parent, nextValue++, expanded));
+        }
+        index.insertChildren(parent, position, nodes);
+        return nodes;
+    }
+
+    private void assertValues(Integer... values) {
+        assertEquals(values.length, index.getRowCount());
+        for (int i = 0; i < values.length; i++) {
+            TreePositionIndex.Node<Integer> node = index.getNode(i);
+            assertEquals("row " + i, values[i], node.getValue());
+            assertEquals("row " + i, i, index.getFlatPosition(node));
+            assertTrue(index.isVisible(node));
+        }
+    }
+
+    private void assertMatches(ModelNode model) {
+        List<ModelNode> rows = new ArrayList<>();
+        flatten(model, rows);
+        rows.remove(0);
+        assertEquals(rows.size(), index.getRowCount());
+        for (int i = 0; i < rows.size(); i++) {
+            assertSame("row " + i, rows.get(i).node, index.getNode(i));
+            assertEquals("row " + i, i, index.getFlatPosition(rows.get(i).node));
+        }
+        assertChildren(model, rows);
+    }
+
+    private void assertChildren(ModelNode model, List<ModelNode> rows) {
+        TreePositionIndex.Node<Integer> node = model.node;
+        List<ModelNode> children = model.children == null ? Collections.<ModelNode>emptyList() : model.children;
+        assertEquals(model.children != null, node.hasChildren());
+        assertEquals(children.size(), node.getChildCount());
+        assertEquals(model.rowCount(), node.getRowCount());
+
+        TreePositionIndex.Node<Integer> sibling = node.getFirstChild();
+        boolean visible = model.expanded && index.isVisible(node);
+        int rowCount = 0;
+        for (int i = 0; i < children.size(); i++) {
+            ModelNode child = children.get(i);
+            assertSame(child.node, node.getChild(i));
+            assertSame(child.node, sibling);
+            sibling = sibling.getNextSibling();
+            assertEquals(rowCount, index.getChildRowCount(node, 0, i));
+            if (visible) {
+                assertEquals(rows.indexOf(child), index.getChildFlatPosition(node, i));
+            }
+            rowCount += child.rowCount();
+            assertChildren(child, rows);
+        }
+        assertNull(sibling);
+        assertEquals(rowCount, index.getChildRowCount(node, 0, children.size()));
+    }
+
+    private static void collect(ModelNode model, List<ModelNode> nodes) {
+        nodes.add(model);
+        if (model.children != null) {
+            for (ModelNode child : model.children) {
+                collect(child, nodes);
+            }
+        }
+    }
+
+    private static void flatten(ModelNode model, List<ModelNode> rows) {
+        rows.add(model);
+        if (model.expanded && model.children != null) {
+            for (ModelNode child : model.children) {
+                flatten(child, rows);
+            }
+        }
+    }
+
+    private static final class ModelNode {
+        final TreePositionIndex.Node<Integer> node;
+        boolean expanded;
+        List<ModelNode> children;
+
+        ModelNode(TreePositionIndex.Node<Integer> node, boolean expanded) {
+            this.node = node;
+            this.expanded = expanded;
+        }
+
+        int rowCount() {
+            int rowCount = 1;
+            if (expanded && children != null) {
+                for (ModelNode child : children) {
+                    rowCount += child.rowCount();
+                }
+            }
+            return rowCount;
+        }
+    }
+}
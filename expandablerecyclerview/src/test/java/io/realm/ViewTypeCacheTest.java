@@ -0,0 +1,195 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ViewTypeCacheTest {
+
+    private static final int UNKNOWN = ViewTypeCache.UNKNOWN;
+
+    private ViewTypeCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ViewTypeCache();
+    }
+
+    @Test
+    public void emptyCache_knowsNoViewType() {
+        assertEquals(UNKNOWN, cache.get(0));
+
+        cache.set(0, 7);
+        cache.insert(0, 2);
+
+        assertViewTypes(UNKNOWN, UNKNOWN);
+    }
+
+    @Test
+    public void reset_forgetsEveryViewType() {
+        cache.reset(3);
+        cache.set(1, 7);
+
+        cache.reset(5);
+
+        assertViewTypes(UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN);
+    }
+
+    @Test
+    public void set_pastTheRows_isIgnored() {
+        cache.reset(2);
+
+        cache.set(2, 7);
+
+        assertEquals(UNKNOWN, cache.get(2));
+    }
+
+    @Test
+    public void insert_shiftsTheFollowingRows() {
+        fill(0, 1, 2);
+
+        cache.insert(1, 2);
+
+        assertViewTypes(0, UNKNOWN, UNKNOWN, 1, 2);
+    }
+
+    @Test
+    public void insert_afterTheLastRow_appendsUnknownRows() {
+        fill(0, 1);
+
+        cache.insert(2, 2);
+
+        assertViewTypes(0, 1, UNKNOWN, UNKNOWN);
+    }
+
+    @Test
+    public void insert_growsPastCapacity() {
+        fill(0, 1);
+
+        cache.insert(2, 100);
+
+        assertEquals(1, cache.get(1));
+        assertEquals(UNKNOWN, cache.get(101));
+    }
+
+    @Test
+    public void remove_shiftsTheFollowingRows() {
+        fill(0, 1, 2, 3, 4);
+
+        cache.remove(1, 2);
+
+        assertViewTypes(0, 3, 4);
+    }
+
+    @Test
+    public void remove_ofTheLastRows() {
+        fill(0, 1, 2, 3);
+
+        cache.remove(2, 2);
+
+        assertViewTypes(0, 1);
+    }
+
+    @Test
+    public void move_carriesTheViewTypeAlong() {
+        fill(0, 1, 2, 3, 4);
+
+        cache.move(1, 3);
+        assertViewTypes(0, 2, 3, 1, 4);
+        cache.move(4, 0);
+        assertViewTypes(4, 0, 2, 3, 1);
+    }
+
+    @Test
+    public void invalidate_forgetsTheChangedRows() {
+        fill(0, 1, 2, 3);
+
+        cache.invalidate(1, 2);
+
+        assertViewTypes(0, UNKNOWN, UNKNOWN, 3);
+    }
+
+    @Test
+    public void updatesPastTheCachedRows_doNotThrow() {
+        fill(0, 1, 2);
+
+        cache.insert(5, 1);
+        cache.invalidate(4, 2);
+        cache.remove(2, 3);
+        assertViewTypes(0, 1);
+        cache.move(1, 4);
+        assertViewTypes(0);
+    }
+
+    @Test
+    public void randomUpdates_matchModel() {
+        Random random = new Random(11);
+        for (int run = 0; run < 200; run++) {
+            List<Integer> model = new ArrayList<>();
+            cache.reset(10);
+            for (int i = 0; i < 10; i++) {
+                model.add(UNKNOWN);
+            }
+            for (int step = 0; step < 100; step++) {
+                int size = model.size();
+                int operation = random.nextInt(5);
+                if (operation == 0 || size < 4) {
+                    int position = random.nextInt(size + 1);
+                    int count = 1 + random.nextInt(3);
+                    cache.insert(position, count);
+                    for (int i = 0; i < count; i++) {
+                        model.add(position, UNKNOWN);
+                    }
+                } else if (operation == 1) {
+                    int position = random.nextInt(size - 3);
+                    int count = 1 + random.nextInt(3);
+                    cache.remove(position, count);
+                    for (int i = 0; i < count; i++) {
+                        model.remove(position);
+                    }
+                } else if (operation == 2) {
+                    int from = random.nextInt(size);
+                    int to = random.nextInt(size);
+                    cache.move(from, to);
+                    model.add(to, model.remove(from));
+                } else if (operation == 3) {
+                    int position = random.nextInt(size);
+                    int count = 1 + random.nextInt(3);
+                    cache.invalidate(position, count);
+                    for (int i = position; i < Math.min(position + count, size); i++) {
+                        model.set(i, UNKNOWN);
+                    }
+                } else {
+                    int position = random.nextInt(size);
+                    int viewType = random.nextInt(4);
+                    cache.set(position, viewType);
+                    model.set(position, viewType);
+                }
+
+                for (int i = 0; i < model.size(); i++) {
+                    assertEquals("row " + i, (int) model.get(i), cache.get(i));
+                }
+                assertEquals(UNKNOWN, cache.get(model.size()));
+            }
+        }
+    }
+
+    private void fill(int... viewTypes) {
+        cache.reset(viewTypes.length);
+        for (int i = 0; i < viewTypes.length; i++) {
+            cache.set(i, viewTypes[i]);
+        }
+    }
+
+    private void assertViewTypes(int... viewTypes) {
+        for (int i = 0; i < viewTypes.length; i++) {
+            assertEquals("row " + i, viewTypes[i], cache.get(i));
+        }
+        assertEquals(UNKNOWN, cache.get(viewTypes.length));
+    }
+}
@@ -0,0 +1,118 @@
+package io.realm.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.realm.RealmList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ExpandableWrapperTest {
+
+    private TestParent parent;
+    private ExpandableWrapper<TestParent, TestChild> wrapper;
+
+    @Before
+    public void setUp() {
+        parent = new TestParent();
+        for (int i = 0; i < 6; i++) {
+            parent.children.add(new TestChild());
+        }
+        wrapper = new ExpandableWrapper<>(parent);
+    }
+
+    @Test
+    public void getWrappedChild_wrapsUpToTheRequestedChild() {
+        assertSame(parent.children.get(2), wrapper.getWrappedChild(2).getChild());
+
+        assertWrapped(3);
+    }
+
+    @Test
+    public void removeWrappedChildren_dropsOnlyTheWrappedOnes() {
+        wrapper.getWrappedChild(3);
+
+        parent.children.remove(3);
+        parent.children.remove(2);
+        wrapper.removeWrappedChildren(2, 2);
+
+        assertWrapped(2);
+        assertSame(parent.children.get(3), wrapper.getWrappedChild(3).getChild());
+    }
+
+    @Test
+    public void insertWrappedChildren_amongTheWrappedOnes() {
+        wrapper.getWrappedChild(2);
+
+        parent.children.add(1, new TestChild());
+        wrapper.insertWrappedChildren(1, 1);
+        parent.children.add(new TestChild());
+        wrapper.insertWrappedChildren(parent.children.size() - 1, 1);
+
+        assertWrapped(4);
+    }
+
+    @Test
+    public void refreshWrappedChildren_wrapsTheReplacedChildren() {
+        wrapper.getWrappedChild(4);
+
+        parent.children.set(1, new TestChild());
+        parent.children.set(2, new TestChild());
+        wrapper.refreshWrappedChildren(1, 2);
+
+        assertWrapped(5);
+    }
+
+    @Test
+    public void refreshWrappedChildren_pastTheWrappedChildren() {
+        wrapper.getWrappedChild(1);
+
+        parent.children.set(1, new TestChild());
+        parent.children.set(2, new TestChild());
+        wrapper.refreshWrappedChildren(1, 3);
+
+        assertWrapped(2);
+        assertSame(parent.children.get(2), wrapper.getWrappedChild(2).getChild());
+    }
+
+    @Test
+    public void refreshWrappedChildren_beforeAnyChildIsWrapped() {
+        wrapper.refreshWrappedChildren(0, 2);
+
+        assertEquals(6, wrapper.getWrappedChildList().size());
+        assertWrapped(6);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refreshWrappedChildren_ofAChildWrapper_throws() {
+        new ExpandableWrapper<TestParent, TestChild>(new TestChild()).refreshWrappedChildren(0, 1);
+    }
+
+    /**
+     * Asserts that the first {@code count} children are wrapped, each with the child at its position.
+     */
+    private void assertWrapped(int count) {
+        RealmList<ExpandableWrapper<TestParent, TestChild>> wrappedChildren = wrapper.getWrappedChildList();
+        for (int i = 0; i < count; i++) {
+            assertSame("child " + i, parent.children.get(i), wrappedChildren.get(i).getChild());
+        }
+    }
+
+    private static class TestChild implements Child {
+    }
+
+    private static class TestParent implements Parent<TestChild> {
+        final RealmList<TestChild> children = new RealmList<>();
+
+        @Override
+        public RealmList<TestChild> getChildList() {
+            return children;
+        }
+
+        @Override
+        public boolean isExpanded() {
+            return false;
+        }
+    }
+}
@@ -15,6 +15,7 @@ import com.gpsinsight.expandablerecyclerviewsample.recyclerview.adapter.RecipeAd
 import java.util.Arrays;
 import java.util.List;
 
+import io.realm.ExpansionStateStore;
 import io.realm.Realm;
 import io.realm.RealmExpandableRecyclerAdapter;
 import io.realm.RealmList;
@@ -52,18 +53,19 @@ public class MainActivity extends AppCompatActivity {
         Recipe burger = new Recipe("burger", burgerIngredients);
 
         final List<Recipe> recipes = Arrays.asList(taco, quesadilla, burger);
-        realm.beginTransaction();
-        for (Recipe recipe : recipes) {
-            Recipe realmRecipe = realm.where(Recipe.class).equalTo("name", recipe.getName()).findFirst();
-            if (realmRecipe != null) {
-                recipe.setExpanded(realmRecipe.isExpanded());
-            }
+        // only seed once, the expanded state of existing recipes is kept by the ExpansionStateStore
+        if (realm.where(Recipe.class).count() == 0) {
+            realm.beginTransaction();
+            realm.insertOrUpdate(recipes);
+            realm.commitTransaction();
         }
-        realm.insertOrUpdate(recipes);
-        realm.commitTransaction();
 
         RecyclerView recyclerView = (RecyclerView) findViewById(R.id.recyclerview);
         adapter = new RecipeAdapter(realm.where(Recipe.class).findAll(), "name");
+        adapter.setAsyncFilter(true);
+        adapter.setHasStableIds(true);
+        adapter.setViewTypeCacheEnabled(true);
+        adapter.setExpansionStateStore(new ExpansionStateStore<>(realm, Recipe.class, "expanded"));
         adapter.setExpandCollapseListener(new RealmExpandableRecyclerAdapter.ExpandCollapseListener() {
             @UiThread
             @Override
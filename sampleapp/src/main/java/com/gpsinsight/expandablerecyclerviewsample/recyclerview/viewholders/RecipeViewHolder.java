@@ -94,15 +94,6 @@ public class RecipeViewHolder extends ParentViewHolder {
             rotateAnimation.setFillAfter(true);
             arrowExpandImageView.startAnimation(rotateAnimation);
         }
-
-        Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-                recipe.setExpanded(!expanded);
-            }
-        });
-        realm.close();
     }
 
     @Override